@@ -0,0 +1,56 @@
+package powertrain.ev.simulation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/// Export of N recorded points to a file in each supported format
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+    @Param({"200", "100000", "1000000"})
+    public int points;
+
+    @Param({"CSV", "CSV_GZIP", "BINARY"})
+    public String formatName;
+
+    private TelemetryExporter.Format format;
+    private ColumnSource source;
+    private String parameterLine;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        format = TelemetryExporter.Format.valueOf(formatName);
+        SimulationParameters params = new SimulationParameters();
+        SimulationEngine engine = new SimulationEngine(params);
+        engine.acceleration = 0.5;
+        Trace trace = new Trace();
+        double[] sample = new double[Channels.COUNT];
+        for (int i = 0; i < points; i++) {
+            engine.step(0.0167);
+            engine.sample(sample);
+            trace.append(sample);
+        }
+        source = trace;
+        parameterLine = TelemetryExporter.parameterLine(params);
+        file = Files.createTempFile("ev_export_bench", format.extension);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return TelemetryExporter.export(source, parameterLine, format, file, rows -> {}, () -> false);
+    }
+}
@@ -0,0 +1,65 @@
+package powertrain.ev.simulation;
+
+import javafx.application.Platform;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// One frame of waveform rendering into an offscreen panel after a session of points samples: the usual
+/// update after a new sample, and a full re-stroke of every layer as the worst case. Both should cost
+/// the same for a minute of history as for an hour.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+    @Param({"3600", "216000"})
+    public int points;
+
+    private SimulationEngine engine;
+    private final double[] sample = new double[Channels.COUNT];
+    private WaveformHistory history;
+    private WaveformPanel panel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        try {
+            Platform.startup(() -> {});
+        } catch (IllegalStateException alreadyStarted) {
+            /// toolkit already running in this fork
+        }
+        engine = new SimulationEngine(new SimulationParameters());
+        engine.acceleration = 0.5;
+        history = new WaveformHistory(WaveformPanel.CHANNELS);
+        for (int i = 0; i < points; i++) step();
+        panel = new WaveformPanel(450, 790, history, 60);
+        panel.redrawAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Platform.exit();
+    }
+
+    @Benchmark
+    public WaveformPanel frame() {
+        step();
+        panel.update();
+        return panel;
+    }
+
+    @Benchmark
+    public WaveformPanel fullRedraw() {
+        step();
+        panel.redrawAll();
+        return panel;
+    }
+
+    private void step() {
+        engine.step(0.0167);
+        engine.sample(sample);
+        history.record(sample);
+    }
+}
@@ -0,0 +1,46 @@
+package powertrain.ev.simulation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// Throughput of a single physics step. The engine drives a 20 s lap from a state taken 10 s into a
+/// run and is put back to that state at the end of every lap, so each step sees a moving vehicle with
+/// charge left rather than an empty battery at top speed.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StepBenchmark {
+    @Param({"Eco", "Normal", "Sport"})
+    public String driveMode;
+
+    private static final double DT = 0.001; // s
+    private static final int LAP_STEPS = 20_000;
+
+    private SimulationEngine engine;
+    private final double[] lapStart = new double[SimulationEngine.SNAPSHOT_SIZE];
+    private int lapStep;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulationParameters params = new SimulationParameters();
+        params.setDriveMode(driveMode);
+        engine = new SimulationEngine(params);
+        engine.acceleration = 0.5;
+        for (int i = 0; i < 10_000; i++) engine.step(DT);
+        engine.snapshot(lapStart);
+    }
+
+    @Benchmark
+    public double step() {
+        if (++lapStep == LAP_STEPS) {
+            lapStep = 0;
+            engine.restore(lapStart);
+        }
+        engine.step(DT);
+        return engine.vehicleSpeed;
+    }
+}
@@ -1,6 +1,9 @@
 module powertrain.ev.simulation.evpowertrainsimulation {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.management;
+    requires static jdk.incubator.vector; // CellPack's vector kernel, when run with --add-modules
 
 
     opens powertrain.ev.simulation to javafx.fxml;
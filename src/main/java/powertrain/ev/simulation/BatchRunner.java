@@ -0,0 +1,158 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/// Command-line entry point that runs the model headless, as fast as the CPU allows.
+/// Usage: BatchRunner <params.properties> <duration> [--dt seconds] [--out summary.txt] [--record file.evt]
+///                    [--cycle NEDC|file.csv] [--cache dir] [--integrator euler|rk4|dopri5] [--tolerance tol]
+/// Duration is in seconds unless suffixed with s, m or h (e.g. 10h), or "cycle" for one pass of the drive
+/// cycle. Without --cycle the acceleration key of the parameter file is held constant. With --cache a
+/// run already computed with identical inputs is answered from the ResultCache in that directory.
+/// --integrator picks the time-stepping scheme (default euler); for dopri5 --dt is the first trial step.
+public final class BatchRunner {
+    static final double DEFAULT_DT = 0.01; // s
+    static final double DEFAULT_TOLERANCE = 1e-6;
+
+    private BatchRunner() {}
+
+    /// Steps the engine until the duration elapses or the battery is empty
+    static RunSummary run(SimulationParameters params, DriverInput driver, double duration, double dt) {
+        return run(params, driver, duration, dt, null);
+    }
+
+    static RunSummary run(SimulationParameters params, DriverInput driver, double duration, double dt,
+                          StepObserver observer) {
+        return run(params, driver, duration, new EulerIntegrator(dt), observer);
+    }
+
+    /// Fixed-step schemes take exactly duration/dt steps; adaptive ones shorten the last step to end
+    /// on the duration
+    static RunSummary run(SimulationParameters params, DriverInput driver, double duration, Integrator integrator,
+                          StepObserver observer) {
+        SimulationEngine engine = new SimulationEngine(params);
+        long start = System.nanoTime();
+        runUntil(engine, driver, duration, integrator, observer);
+        return new RunSummary(engine, System.nanoTime() - start);
+    }
+
+    /// Steps an engine from its current time until endTime (s) or an empty battery, e.g. a branch
+    /// restored from a Checkpoint
+    static void runUntil(SimulationEngine engine, DriverInput driver, double endTime, Integrator integrator,
+                         StepObserver observer) {
+        double fixedStep = integrator.fixedStep();
+        if (fixedStep > 0) {
+            long steps = Math.round((endTime - engine.time) / fixedStep);
+            for (long i = 0; i < steps && engine.soc > 0; i++) {
+                integrator.advance(engine, driver, fixedStep);
+                if (observer != null) observer.onStep(engine);
+            }
+        } else {
+            while (engine.time < endTime && engine.soc > 0) {
+                integrator.advance(engine, driver, endTime - engine.time);
+                if (observer != null) observer.onStep(engine);
+            }
+        }
+    }
+
+    static DriverInput constant(double acceleration) {
+        return new DriverInput() {
+            @Override
+            public double acceleration(SimulationEngine engine, double dt) {
+                return acceleration;
+            }
+
+            @Override
+            public double accelerationAt(SimulationEngine engine, double time, double speedMs) {
+                return acceleration;
+            }
+
+            @Override
+            public String profileKey() {
+                return "constant:" + Double.toHexString(acceleration);
+            }
+        };
+    }
+
+    static double parseDuration(String text) {
+        String value = text.trim().toLowerCase();
+        double scale = 1;
+        if (value.endsWith("h")) scale = 3600;
+        else if (value.endsWith("m")) scale = 60;
+        if (scale != 1 || value.endsWith("s")) value = value.substring(0, value.length() - 1);
+        double seconds = Double.parseDouble(value) * scale;
+        if (!(seconds > 0)) throw new IllegalArgumentException("Duration must be positive: " + text);
+        return seconds;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchRunner <params.properties> <duration[s|m|h]|cycle> [--dt seconds] [--out summary.txt]"
+                    + " [--record file.evt] [--cycle NEDC|file.csv] [--cache dir] [--integrator euler|rk4|dopri5]"
+                    + " [--tolerance tol]");
+            System.exit(2);
+        }
+        Path paramFile = Path.of(args[0]);
+        double dt = DEFAULT_DT;
+        Path out = null;
+        Path record = null;
+        DriveCycle cycle = null;
+        ResultCache cache = null;
+        String integratorName = "euler";
+        double tolerance = DEFAULT_TOLERANCE;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dt" -> dt = Double.parseDouble(args[++i]);
+                case "--out" -> out = Path.of(args[++i]);
+                case "--record" -> record = Path.of(args[++i]);
+                case "--cycle" -> cycle = DriveCycle.resolve(args[++i]);
+                case "--cache" -> cache = ResultCache.open(Path.of(args[++i]));
+                case "--integrator" -> integratorName = args[++i];
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (record != null && cache != null) {
+            System.err.println("--record and --cache cannot be combined: a cached result has no steps to record");
+            System.exit(2);
+        }
+        Properties props = SimulationParameters.readProperties(paramFile);
+        SimulationParameters params = new SimulationParameters();
+        params.apply(props);
+        DriverInput driver = cycle != null
+                ? new DriveCycleDriver(cycle)
+                : constant(SimulationParameters.number(props, "acceleration", 0));
+        double duration;
+        if (args[1].equalsIgnoreCase("cycle")) {
+            if (cycle == null) throw new IllegalArgumentException("Duration 'cycle' needs --cycle");
+            duration = cycle.duration();
+        } else {
+            duration = parseDuration(args[1]);
+        }
+
+        Integrator integrator = Integrator.create(integratorName, dt, tolerance);
+        RunSummary summary;
+        if (record != null) {
+            try (TelemetryRecorder recorder = TelemetryRecorder.create(record)) {
+                summary = run(params, driver, duration, integrator, recorder);
+            }
+        } else if (cache != null) {
+            summary = cache.run(params, driver, duration, integrator);
+        } else {
+            summary = run(params, driver, duration, integrator, null);
+        }
+        if (out != null) {
+            Files.writeString(out, summary.format(), StandardCharsets.UTF_8);
+        }
+        System.out.println("Integrator: " + integrator.describe());
+        if (params.cellsParallel > 0) {
+            System.out.println("Cell Pack: " + Math.max(1, Math.round(BatteryModel.seriesCells(params))) + "s"
+                    + params.cellsParallel + "p, " + CellPack.KERNEL.name() + " kernel");
+        }
+        System.out.print(summary.format());
+        if (cache != null) System.out.print(cache.stats());
+    }
+}
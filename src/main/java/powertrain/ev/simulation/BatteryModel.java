@@ -0,0 +1,82 @@
+package powertrain.ev.simulation;
+
+/// Thevenin equivalent circuit of the pack: open-circuit voltage as a function of SoC behind a series
+/// resistance R0 and two RC pairs for the fast and slow polarisation. The cell tables are scaled to the
+/// pack from the nominal voltage (cells in series) and capacity (resistance falls with amp-hours).
+/// The tables sit on evenly spaced axes, so every lookup is an index computation and one interpolation.
+/// The engine keeps the state (SoC, RC voltages), the per-dt exponentials and the pack scaling, so a
+/// step costs two table lookups and a square root; this class is stateless.
+final class BatteryModel {
+    static final double CELL_NOMINAL_VOLTAGE = 3.7; // V
+    /// NMC cell open-circuit voltage (V) at SoC 0, 10, ..., 100 %
+    private static final double[] CELL_OCV = {
+            3.00, 3.45, 3.55, 3.62, 3.67, 3.72, 3.78, 3.86, 3.95, 4.06, 4.18
+    };
+    private static final double OCV_SOC_STEP = 10; // %
+    /// Series resistance relative to 25 °C at -20, -10, ..., 60 °C
+    private static final double[] RESISTANCE_FACTOR = {
+            4.2, 2.9, 2.0, 1.45, 1.1, 1.0, 0.92, 0.87, 0.84
+    };
+    private static final double TEMP_MIN = -20; // °C
+    private static final double TEMP_STEP = 10; // °C
+    /// Cell R0 times cell capacity at 25 °C, so a cell of capacity C Ah has R0 = R0_AH / C
+    private static final double R0_AH = 0.07; // Ω·Ah
+    /// RC pairs as a share of R0, with fixed time constants so the step exponentials depend only on dt
+    static final double R1_SHARE = 0.4;
+    static final double TAU1 = 10; // s
+    static final double R2_SHARE = 0.5;
+    static final double TAU2 = 200; // s
+
+    private BatteryModel() {}
+
+    static double seriesCells(SimulationParameters p) {
+        return p.batteryVoltage / CELL_NOMINAL_VOLTAGE;
+    }
+
+    /// Charge capacity (Ah) of the pack from its energy and nominal voltage
+    static double capacityAh(SimulationParameters p) {
+        return p.batteryCapacity * 1000 / p.batteryVoltage;
+    }
+
+    /// Pack open-circuit voltage (V) at soc (%)
+    static double openCircuitVoltage(SimulationParameters p, double soc) {
+        return seriesCells(p) * cellOcv(soc);
+    }
+
+    /// Cell open-circuit voltage (V) at soc (%)
+    static double cellOcv(double soc) {
+        return lookup(CELL_OCV, soc * (1 / OCV_SOC_STEP));
+    }
+
+    /// Pack series resistance R0 (Ω) at 25 °C
+    static double seriesResistance(SimulationParameters p) {
+        return seriesCells(p) * cellResistance(capacityAh(p));
+    }
+
+    /// R0 (Ω) at 25 °C of a cell, or a group of parallel cells, of the given capacity (Ah)
+    static double cellResistance(double capacityAh) {
+        return R0_AH / capacityAh;
+    }
+
+    /// R0 relative to its 25 °C value at the given temperature (°C)
+    static double resistanceFactor(double temperature) {
+        return lookup(RESISTANCE_FACTOR, (temperature - TEMP_MIN) * (1 / TEMP_STEP));
+    }
+
+    /// Current (A) that delivers power (W) at the terminals of a source e (V) behind r0 (Ω); the smaller
+    /// root of r0·I² - e·I + P = 0. Demands beyond the maximum e²/4r0 get the maximum-power current.
+    static double current(double power, double e, double r0) {
+        double discriminant = e * e - 4 * r0 * power;
+        if (discriminant <= 0) return e / (2 * r0);
+        return 2 * power / (e + Math.sqrt(discriminant)); // same root without cancellation near P = 0
+    }
+
+    /// Linear interpolation on a table indexed 0..n-1, clamped at both ends
+    private static double lookup(double[] table, double x) {
+        int last = table.length - 1;
+        if (x <= 0) return table[0];
+        if (x >= last) return table[last];
+        int i = (int) x;
+        return table[i] + (table[i + 1] - table[i]) * (x - i);
+    }
+}
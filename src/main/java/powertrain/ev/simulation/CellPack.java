@@ -0,0 +1,332 @@
+package powertrain.ev.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/// Cell-level battery pack, the optional replacement for the engine's lumped battery: groups of parallel
+/// cells in series, the cells of a group sharing its terminal voltage and splitting its current by their
+/// own open-circuit voltage and resistance. Every cell has its own SoC, RC polarisation, capacity and
+/// 25 °C resistance, drawn around the nominal with a relative spread of cellSpread, and a thermal node
+/// that heats with its losses, conducts to the cells on either side of it in the row and to a coolant
+/// loop, which sheds heat to ambient through a radiator.
+/// State is structure-of-arrays indexed by cell, group after group. A step is a few passes over those
+/// arrays, run by the Vector API kernel when jdk.incubator.vector is in the boot layer and by the
+/// scalar kernel, the same arithmetic one cell at a time, otherwise or with -Dev.scalarCells=true. The
+/// table lookups (OCV and the resistance factor) are scalar in both, where gathers would cost more than
+/// they save, and so are the sums, in cell order, so both kernels give bit-identical results.
+/// Simulation thread only; copy() takes the state along, e.g. into a checkpoint.
+final class CellPack {
+    static final long SEED = 1; // the same parameters always build the same pack
+    static final double MAX_DEVIATION = 3; // spread draws are clipped at this many standard deviations
+    static final double HEAT_CAPACITY_PER_AH = 20; // J/K of a cell per Ah of its capacity
+    static final double NEIGHBOUR_CONDUCTANCE = 1.0; // W/K between adjacent cells
+    static final double COOLANT_CONDUCTANCE = 0.5; // W/K from each cell to the coolant
+    static final double COOLANT_HEAT_CAPACITY = 20_000; // J/K of the loop
+    static final double RADIATOR_CONDUCTANCE = 150; // W/K from the coolant to ambient
+    static final Kernel KERNEL = kernel();
+
+    final int groups; // in series
+    final int parallel; // cells per group
+    final int size;
+    /// Parameters the pack was built from
+    private final double builtVoltage;
+    private final double builtCapacity;
+    private final int builtParallel;
+    private final double builtSpread;
+    /// Per cell constants, shared by copies
+    final double[] r25; // Ω
+    final double[] socPerAmpSecond; // % per A·s
+    final double[] heatRate; // K per J
+    final double[] weight; // share of the pack's charge capacity
+    /// Per cell state
+    final double[] soc; // %
+    final double[] rc1; // V across the fast RC pair
+    final double[] rc2; // V across the slow RC pair
+    double[] temp; // °C, cell i at i + 1 between two ghost nodes that mirror the row's ends
+    double[] nextTemp;
+    double coolantTemp; // °C
+    /// Per cell values of the step in progress, from prepare
+    final double[] ocv; // V
+    final double[] factor; // R0 relative to 25 °C
+    final double[] r; // Ω
+    final double[] g; // S, 1 / r
+    final double[] e; // V, ocv behind the RC pairs
+    final double[] ge; // A, g · e
+    final double[] v; // V at the terminals of the cell's group
+    private final double[] groupG;
+    private final double[] groupGe;
+    /// Thevenin equivalent of the whole pack, from prepare
+    double source; // V
+    double resistance; // Ω
+    /// Statistics, from prepare
+    double socMean; // %, weighted by capacity
+    double socMin;
+    double socMax;
+    double tempSum; // °C, over the cells
+    double tempMean;
+    double tempMin;
+    double tempMax;
+    double rc1Total; // V, summed over the groups
+    double rc2Total;
+    private double cachedDt = Double.NaN;
+    private double decay1;
+    private double decay2;
+
+    /// Every cell at soc (%) and temperature (°C), as the coolant
+    CellPack(SimulationParameters p, double soc, double temperature) {
+        builtVoltage = p.batteryVoltage;
+        builtCapacity = p.batteryCapacity;
+        builtParallel = p.cellsParallel;
+        builtSpread = p.cellSpread;
+        groups = Math.max(1, (int) Math.round(BatteryModel.seriesCells(p)));
+        parallel = p.cellsParallel;
+        size = groups * parallel;
+        r25 = new double[size];
+        socPerAmpSecond = new double[size];
+        heatRate = new double[size];
+        weight = new double[size];
+        double cellAh = BatteryModel.capacityAh(p) / parallel;
+        double nominalR = BatteryModel.cellResistance(cellAh);
+        double spread = p.cellSpread / 100;
+        SplittableRandom random = new SplittableRandom(SEED);
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            double capacity = cellAh * (1 + spread * draw(random));
+            r25[i] = nominalR * (1 + spread * draw(random));
+            socPerAmpSecond[i] = 100 / (3600 * capacity);
+            heatRate[i] = 1 / (HEAT_CAPACITY_PER_AH * capacity);
+            weight[i] = capacity;
+            total += capacity;
+        }
+        for (int i = 0; i < size; i++) weight[i] /= total;
+        this.soc = new double[size];
+        Arrays.fill(this.soc, soc);
+        rc1 = new double[size];
+        rc2 = new double[size];
+        temp = new double[size + 2];
+        Arrays.fill(temp, temperature);
+        nextTemp = new double[size + 2];
+        coolantTemp = temperature;
+        ocv = new double[size];
+        factor = new double[size];
+        r = new double[size];
+        g = new double[size];
+        e = new double[size];
+        ge = new double[size];
+        v = new double[size];
+        groupG = new double[groups];
+        groupGe = new double[groups];
+        prepare();
+    }
+
+    private CellPack(CellPack from) {
+        builtVoltage = from.builtVoltage;
+        builtCapacity = from.builtCapacity;
+        builtParallel = from.builtParallel;
+        builtSpread = from.builtSpread;
+        groups = from.groups;
+        parallel = from.parallel;
+        size = from.size;
+        r25 = from.r25;
+        socPerAmpSecond = from.socPerAmpSecond;
+        heatRate = from.heatRate;
+        weight = from.weight;
+        soc = from.soc.clone();
+        rc1 = from.rc1.clone();
+        rc2 = from.rc2.clone();
+        temp = from.temp.clone();
+        nextTemp = new double[size + 2];
+        coolantTemp = from.coolantTemp;
+        ocv = new double[size];
+        factor = new double[size];
+        r = new double[size];
+        g = new double[size];
+        e = new double[size];
+        ge = new double[size];
+        v = new double[size];
+        groupG = new double[groups];
+        groupGe = new double[groups];
+        prepare();
+    }
+
+    /// Clipped standard normal draw
+    private static double draw(SplittableRandom random) {
+        double z = random.nextGaussian();
+        return z < -MAX_DEVIATION ? -MAX_DEVIATION : z > MAX_DEVIATION ? MAX_DEVIATION : z;
+    }
+
+    /// Independent pack in the same state
+    CellPack copy() {
+        return new CellPack(this);
+    }
+
+    /// Whether p still describes this pack; any change to its layout or spread builds a new one
+    boolean matches(SimulationParameters p) {
+        return p.batteryVoltage == builtVoltage && p.batteryCapacity == builtCapacity
+                && p.cellsParallel == builtParallel && p.cellSpread == builtSpread;
+    }
+
+    /// Draws current (A) from the pack terminals for dt seconds: every group at the voltage that sends
+    /// current through its cells, then currents, losses, RC pairs, SoC and temperatures cell by cell, the
+    /// coolant loop, and the equivalent circuit and statistics for the next step
+    void advance(double current, double dt, double ambient) {
+        if (dt != cachedDt) {
+            cachedDt = dt;
+            decay1 = Math.exp(-dt / BatteryModel.TAU1);
+            decay2 = Math.exp(-dt / BatteryModel.TAU2);
+        }
+        for (int group = 0, cell = 0; group < groups; group++) {
+            double voltage = (groupGe[group] - current) / groupG[group];
+            for (int end = cell + parallel; cell < end; cell++) v[cell] = voltage;
+        }
+        temp[0] = temp[1];
+        temp[size + 1] = temp[size];
+        double toCoolant = COOLANT_CONDUCTANCE * (tempSum - size * coolantTemp); // summed over the cells
+        KERNEL.advance(this, dt, decay1, decay2);
+        double[] swap = temp;
+        temp = nextTemp;
+        nextTemp = swap;
+        coolantTemp += (toCoolant - RADIATOR_CONDUCTANCE * (coolantTemp - ambient)) * dt / COOLANT_HEAT_CAPACITY;
+        prepare();
+    }
+
+    /// Looks up each cell's OCV and resistance factor, then reduces the cells to the pack's Thevenin
+    /// equivalent, per group the conductance-weighted source behind the parallel resistance, in series,
+    /// and to the pack's statistics
+    private void prepare() {
+        for (int i = 0; i < size; i++) {
+            ocv[i] = BatteryModel.cellOcv(soc[i]);
+            factor[i] = BatteryModel.resistanceFactor(temp[i + 1]);
+        }
+        KERNEL.conductances(this);
+        double packSource = 0;
+        double packResistance = 0;
+        double socSum = 0;
+        double temps = 0;
+        double rc1Sum = 0;
+        double rc2Sum = 0;
+        for (int group = 0, cell = 0; group < groups; group++) {
+            double sumG = 0;
+            double sumGe = 0;
+            for (int end = cell + parallel; cell < end; cell++) {
+                sumG += g[cell];
+                sumGe += ge[cell];
+                socSum += soc[cell] * weight[cell];
+                temps += temp[cell + 1];
+                rc1Sum += rc1[cell];
+                rc2Sum += rc2[cell];
+            }
+            groupG[group] = sumG;
+            groupGe[group] = sumGe;
+            packSource += sumGe / sumG;
+            packResistance += 1 / sumG;
+        }
+        source = packSource;
+        resistance = packResistance;
+        socMean = socSum;
+        tempSum = temps;
+        tempMean = temps / size;
+        rc1Total = rc1Sum / parallel;
+        rc2Total = rc2Sum / parallel;
+        KERNEL.extremes(this);
+    }
+
+    /// The per-cell passes of a step, over arrays of the pack
+    interface Kernel {
+        String name();
+
+        /// r, g, e and ge of every cell from ocv, factor and the RC voltages
+        void conductances(CellPack pack);
+
+        /// One step of every cell at the group voltages in v: current, losses, RC pairs and SoC in place,
+        /// temperatures into nextTemp
+        void advance(CellPack pack, double dt, double decay1, double decay2);
+
+        /// Smallest and largest cell SoC and temperature
+        void extremes(CellPack pack);
+    }
+
+    private static Kernel kernel() {
+        if (!Boolean.getBoolean("ev.scalarCells") && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorCellKernel();
+            } catch (LinkageError e) {
+                /// incubator classes not readable from here; the scalar kernel gives the same results
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    /// One cell at a time; also finishes the tail of the vector kernel's loops
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public void conductances(CellPack pack) {
+            conductances(pack, 0, pack.size);
+        }
+
+        @Override
+        public void advance(CellPack pack, double dt, double decay1, double decay2) {
+            advance(pack, 0, pack.size, dt, decay1, decay2);
+        }
+
+        @Override
+        public void extremes(CellPack pack) {
+            pack.socMin = Double.POSITIVE_INFINITY;
+            pack.socMax = Double.NEGATIVE_INFINITY;
+            pack.tempMin = Double.POSITIVE_INFINITY;
+            pack.tempMax = Double.NEGATIVE_INFINITY;
+            extremes(pack, 0, pack.size);
+        }
+
+        static void conductances(CellPack pack, int from, int to) {
+            for (int i = from; i < to; i++) {
+                double r = pack.r25[i] * pack.factor[i];
+                double g = 1 / r;
+                double e = pack.ocv[i] - pack.rc1[i] - pack.rc2[i];
+                pack.r[i] = r;
+                pack.g[i] = g;
+                pack.e[i] = e;
+                pack.ge[i] = g * e;
+            }
+        }
+
+        static void advance(CellPack pack, int from, int to, double dt, double decay1, double decay2) {
+            double[] temp = pack.temp;
+            double coolant = pack.coolantTemp;
+            double charge1 = BatteryModel.R1_SHARE * (1 - decay1);
+            double charge2 = BatteryModel.R2_SHARE * (1 - decay2);
+            for (int i = from; i < to; i++) {
+                double v = pack.v[i];
+                double current = (pack.e[i] - v) * pack.g[i];
+                double loss = current * (pack.ocv[i] - v);
+                double drop = pack.r[i] * current;
+                pack.rc1[i] = pack.rc1[i] * decay1 + charge1 * drop;
+                pack.rc2[i] = pack.rc2[i] * decay2 + charge2 * drop;
+                double soc = pack.soc[i] - current * dt * pack.socPerAmpSecond[i];
+                pack.soc[i] = soc <= 0 ? 0 : soc >= 100 ? 100 : soc;
+                double t = temp[i + 1];
+                double cooling = COOLANT_CONDUCTANCE * (t - coolant);
+                double conduction = NEIGHBOUR_CONDUCTANCE * (temp[i] + temp[i + 2] - 2 * t);
+                pack.nextTemp[i + 1] = t + (loss + conduction - cooling) * dt * pack.heatRate[i];
+            }
+        }
+
+        /// Widens the pack's extremes by cells [from, to)
+        static void extremes(CellPack pack, int from, int to) {
+            double[] temp = pack.temp;
+            for (int i = from; i < to; i++) {
+                double soc = pack.soc[i];
+                double t = temp[i + 1];
+                if (soc < pack.socMin) pack.socMin = soc;
+                if (soc > pack.socMax) pack.socMax = soc;
+                if (t < pack.tempMin) pack.tempMin = t;
+                if (t > pack.tempMax) pack.tempMax = t;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package powertrain.ev.simulation;
+
+/// Indices of the per-step output channels written by SimulationEngine.sample
+final class Channels {
+    static final int VOLTAGE = 0; // V
+    static final int CURRENT = 1; // A
+    static final int SPEED = 2; // km/h
+    static final int TEMP = 3; // °C
+    static final int SOC = 4; // %
+    static final int TORQUE = 5; // Nm
+    static final int EFFICIENCY = 6; // Wh/km
+    static final int RPM = 7; // RPM
+    static final int DISTANCE = 8; // km
+    static final int ENERGY = 9; // kWh
+    /// Cell-level pack; with the lumped battery the pack is one uniform cell
+    static final int CELL_TEMP_MIN = 10; // °C
+    static final int CELL_TEMP_MAX = 11; // °C
+    static final int SOC_SPREAD = 12; // % between the emptiest and the fullest cell
+    static final int COUNT = 13;
+
+    static final String[] NAMES = {
+            "Voltage", "Current", "Speed", "Temperature", "SoC", "Torque", "Efficiency", "RPM", "Distance", "Energy",
+            "Cell Temp Min", "Cell Temp Max", "SoC Spread"
+    };
+    static final String[] UNITS = {"V", "A", "km/h", "°C", "%", "Nm", "Wh/km", "RPM", "km", "kWh", "°C", "°C", "%"};
+
+    private Channels() {}
+}
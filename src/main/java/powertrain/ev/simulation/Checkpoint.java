@@ -0,0 +1,90 @@
+package powertrain.ev.simulation;
+
+import java.util.Map;
+
+/// Everything needed to continue a run from one instant: the engine snapshot and cell states, a copy of
+/// the parameters, the driver, the integrator's step-size state and the sampled history up to that
+/// instant. Immutable once captured. Each branch gets its own copies of the small state and a fork of the history, so
+/// starting a branch costs the same however long the run before the checkpoint was, and any number of
+/// branches can run from one checkpoint at once.
+final class Checkpoint {
+    private final double[] state = new double[SimulationEngine.SNAPSHOT_SIZE];
+    private final CellPack cells; // null with the lumped battery; never advanced
+    private final SimulationParameters params;
+    private final DriverInput driver; // template, forked for each branch; null for manual acceleration
+    private final Integrator integrator; // template, never advanced
+    final Trace history;
+    final double time; // simulated s
+    final double soc; // %
+    final double distance; // km
+    final double energyConsumed; // kWh
+
+    private Checkpoint(SimulationEngine engine, DriverInput driver, Integrator integrator, Trace history) {
+        engine.snapshot(state);
+        this.cells = engine.copyCells();
+        this.params = engine.params.copy();
+        this.driver = driver == null ? null : driver.fork();
+        this.integrator = integrator.fork();
+        this.history = history.fork();
+        this.time = engine.time;
+        this.soc = engine.soc;
+        this.distance = engine.distance;
+        this.energyConsumed = engine.energyConsumed;
+    }
+
+    /// Call on the thread that steps the engine, between steps. history is the trace sampled so far; the
+    /// checkpoint keeps a fork of it, so the caller may go on appending.
+    static Checkpoint capture(SimulationEngine engine, DriverInput driver, Integrator integrator, Trace history) {
+        return new Checkpoint(engine, driver, integrator, history);
+    }
+
+    /// Engine snapshot at the checkpoint, as SimulationEngine.restore reads it
+    void restoreInto(SimulationEngine engine) {
+        engine.restore(state);
+        engine.restoreCells(cells);
+    }
+
+    /// A run continuing from the checkpoint with some parameters changed, keyed as for
+    /// SimulationParameters.set (e.g. driveMode=Eco, regenBraking=false)
+    Branch branch(String label, Map<String, String> overrides) {
+        SimulationParameters branchParams = params.copy();
+        overrides.forEach(branchParams::set);
+        SimulationEngine engine = new SimulationEngine(branchParams);
+        engine.restore(state);
+        engine.restoreCells(cells);
+        return new Branch(label, engine, driver == null ? null : driver.fork(), integrator.fork(), history.fork());
+    }
+
+    /// One what-if continuation: its own engine, driver and integrator, and a history that shares the
+    /// checkpoint's prefix
+    static final class Branch {
+        final String label;
+        final SimulationEngine engine;
+        final DriverInput driver;
+        final Integrator integrator;
+        final Trace history;
+
+        private Branch(String label, SimulationEngine engine, DriverInput driver, Integrator integrator, Trace history) {
+            this.label = label;
+            this.engine = engine;
+            this.driver = driver;
+            this.integrator = integrator;
+            this.history = history;
+        }
+
+        /// Steps the branch for duration seconds of simulated time, or until the battery is empty,
+        /// appending to its history every sampleInterval seconds. The summary holds the state reached
+        /// and the steps taken by the branch alone.
+        RunSummary run(double duration, double sampleInterval) {
+            long steps = engine.steps;
+            long rejected = engine.rejectedSteps;
+            long evaluations = engine.evaluations;
+            long start = System.nanoTime();
+            Trace.Sampler sampler = new Trace.Sampler(history, sampleInterval, engine.time + sampleInterval);
+            BatchRunner.runUntil(engine, driver, engine.time + duration, integrator, sampler);
+            return new RunSummary(engine.soc, engine.distance, engine.energyConsumed, engine.energyEfficiency,
+                    engine.peakBatteryTemp, engine.time, engine.steps - steps, engine.rejectedSteps - rejected,
+                    engine.evaluations - evaluations, System.nanoTime() - start, false);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+
+/// Named columns of doubles that can be read in chunks, e.g. a recording or a waveform snapshot
+interface ColumnSource {
+    String[] names();
+
+    String[] units();
+
+    long rows();
+
+    /// Copies len values of one column starting at fromRow into dst
+    void read(int column, long fromRow, double[] dst, int offset, int len) throws IOException;
+}
@@ -0,0 +1,126 @@
+package powertrain.ev.simulation;
+
+/// Embedded Runge-Kutta 5(4) of Dormand and Prince with local error control. Each trial step computes a
+/// fifth-order solution and a fourth-order estimate from the same seven stages; the step is accepted
+/// when their difference, scaled per state by the absolute and relative tolerance, has an RMS norm of
+/// at most one, and the next step grows or shrinks with the fifth root of that norm. Cruise segments
+/// therefore run at long steps and transients at short ones.
+/// Steps end on the driver's breakpoints rather than straddle a kink in the command. The first-same-as-
+/// last stage is not reused: the driver's command can change between steps.
+final class DormandPrinceIntegrator implements Integrator {
+    static final double MAX_STEP = 10; // s, so drive cycle features are not stepped over blindly
+    private static final double MIN_STEP = 1e-9; // s
+    private static final double SAFETY = 0.9;
+    private static final double MIN_SCALE = 0.2;
+    private static final double MAX_SCALE = 5;
+    /// Typical magnitude of each state, turning the tolerance into an absolute error bound
+    private static final double[] STATE_SCALE = new double[SimulationEngine.STATE_SIZE];
+    static {
+        STATE_SCALE[SimulationEngine.S_SPEED] = 10; // m/s
+        STATE_SCALE[SimulationEngine.S_DISTANCE] = 1; // km
+        STATE_SCALE[SimulationEngine.S_SOC] = 100; // %
+        STATE_SCALE[SimulationEngine.S_ENERGY] = 10; // kWh
+        STATE_SCALE[SimulationEngine.S_TEMP] = 10; // °C
+        STATE_SCALE[SimulationEngine.S_RC1] = 1; // V
+        STATE_SCALE[SimulationEngine.S_RC2] = 1; // V
+    }
+    /// Butcher tableau
+    private static final double C2 = 1.0 / 5, C3 = 3.0 / 10, C4 = 4.0 / 5, C5 = 8.0 / 9;
+    private static final double A21 = 1.0 / 5;
+    private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+    private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+    private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187, A53 = 64448.0 / 6561,
+            A54 = -212.0 / 729;
+    private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33, A63 = 46732.0 / 5247, A64 = 49.0 / 176,
+            A65 = -5103.0 / 18656;
+    private static final double B1 = 35.0 / 384, B3 = 500.0 / 1113, B4 = 125.0 / 192, B5 = -2187.0 / 6784,
+            B6 = 11.0 / 84;
+    /// Fifth- minus fourth-order weights
+    private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920,
+            E5 = -17253.0 / 339200, E6 = 22.0 / 525, E7 = -1.0 / 40;
+
+    private final double firstStep;
+    private final double tolerance;
+    private double h; // s, next trial step
+    private final double[] y = new double[SimulationEngine.STATE_SIZE];
+    private final double[] next = new double[SimulationEngine.STATE_SIZE];
+    private final double[] trial = new double[SimulationEngine.STATE_SIZE];
+    private final double[][] k = new double[7][SimulationEngine.STATE_SIZE];
+
+    DormandPrinceIntegrator(double firstStep, double tolerance) {
+        if (!(firstStep > 0)) throw new IllegalArgumentException("Step must be positive: " + firstStep);
+        if (!(tolerance > 0)) throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        this.firstStep = firstStep;
+        this.tolerance = tolerance;
+        this.h = Math.min(firstStep, MAX_STEP);
+    }
+
+    @Override
+    public double advance(SimulationEngine engine, DriverInput driver, double maxStep) {
+        engine.saveState(y);
+        if (driver != null) maxStep = Math.min(maxStep, driver.nextBreakpoint(engine.time) - engine.time);
+        Integrator.command(engine, driver, Math.min(h, maxStep));
+        while (true) {
+            double step = Math.min(h, maxStep);
+            double error = trialStep(engine, driver, step);
+            if (error <= 1 || step <= MIN_STEP) {
+                double grow = error > 0 ? SAFETY * Math.pow(error, -0.2) : MAX_SCALE;
+                if (step == h) h = Math.min(MAX_STEP, step * Math.min(MAX_SCALE, grow));
+                engine.loadState(next, step);
+                return step;
+            }
+            engine.rejectedSteps++;
+            h = Math.max(MIN_STEP, step * Math.max(MIN_SCALE, SAFETY * Math.pow(error, -0.2)));
+        }
+    }
+
+    /// Fills next with the fifth-order solution from y and returns the scaled error norm
+    private double trialStep(SimulationEngine engine, DriverInput driver, double step) {
+        int n = y.length;
+        double[] k1 = k[0], k2 = k[1], k3 = k[2], k4 = k[3], k5 = k[4], k6 = k[5], k7 = k[6];
+        Integrator.evaluate(engine, driver, 0, y, k1);
+        for (int i = 0; i < n; i++) trial[i] = y[i] + step * A21 * k1[i];
+        Integrator.evaluate(engine, driver, C2 * step, trial, k2);
+        for (int i = 0; i < n; i++) trial[i] = y[i] + step * (A31 * k1[i] + A32 * k2[i]);
+        Integrator.evaluate(engine, driver, C3 * step, trial, k3);
+        for (int i = 0; i < n; i++) trial[i] = y[i] + step * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+        Integrator.evaluate(engine, driver, C4 * step, trial, k4);
+        for (int i = 0; i < n; i++) {
+            trial[i] = y[i] + step * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+        }
+        Integrator.evaluate(engine, driver, C5 * step, trial, k5);
+        for (int i = 0; i < n; i++) {
+            trial[i] = y[i] + step * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+        }
+        Integrator.evaluate(engine, driver, step, trial, k6);
+        for (int i = 0; i < n; i++) {
+            next[i] = y[i] + step * (B1 * k1[i] + B3 * k3[i] + B4 * k4[i] + B5 * k5[i] + B6 * k6[i]);
+        }
+        Integrator.evaluate(engine, driver, step, next, k7);
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double error = step * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+            double scale = tolerance * (STATE_SCALE[i] + Math.max(Math.abs(y[i]), Math.abs(next[i])));
+            sum += (error / scale) * (error / scale);
+        }
+        return Math.sqrt(sum / n);
+    }
+
+    @Override
+    public double fixedStep() {
+        return Double.NaN;
+    }
+
+    /// Carries the next trial step over, so the branch does not restart from firstStep
+    @Override
+    public Integrator fork() {
+        DormandPrinceIntegrator copy = new DormandPrinceIntegrator(firstStep, tolerance);
+        copy.h = h;
+        return copy;
+    }
+
+    @Override
+    public String describe() {
+        return "dopri5 h0=" + firstStep + " tol=" + tolerance;
+    }
+}
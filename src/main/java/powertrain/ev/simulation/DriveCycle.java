@@ -0,0 +1,123 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/// Speed-vs-time trace parsed once into primitive arrays. Immutable, so one instance can be shared
+/// by any number of runs; each run keeps its own lookup cursor in a DriveCycleDriver.
+/// Files hold "time_s,speed_kmh" rows (comma, semicolon or whitespace separated); lines starting with
+/// '#' and header lines before the first row are ignored, and speed is interpolated linearly between
+/// rows. A header naming mph, as in EPA's published dynamometer schedules, reads the speeds as mph.
+final class DriveCycle {
+    /// Cycles that may be bundled: WLTP (its class 3b cycle, wltc.csv) and EPA's UDDS and HWFET join
+    /// NEDC once their official schedules are added next to nedc.csv
+    private static final String[] KNOWN = {"NEDC", "WLTP", "UDDS", "HWFET"};
+    static final String[] BUILT_IN = bundled(KNOWN);
+    private static final double KMH_PER_MPH = 1.609344;
+    final String name;
+    final double[] time; // s, strictly increasing, starting at 0
+    final double[] speed; // km/h
+    final String digest; // SHA-256 of the trace, identifies it in ResultCache keys
+
+    DriveCycle(String name, double[] time, double[] speed) {
+        if (time.length < 2 || time.length != speed.length) {
+            throw new IllegalArgumentException(name + ": a drive cycle needs at least two time/speed rows");
+        }
+        for (int i = 1; i < time.length; i++) {
+            if (!(time[i] > time[i - 1])) {
+                throw new IllegalArgumentException(name + ": time must increase, row " + (i + 1));
+            }
+        }
+        this.name = name;
+        this.time = time;
+        this.speed = speed;
+        ByteBuffer bytes = ByteBuffer.allocate(2 * time.length * Double.BYTES);
+        for (int i = 0; i < time.length; i++) bytes.putDouble(time[i]).putDouble(speed[i]);
+        this.digest = HexFormat.of().formatHex(ResultCache.sha256().digest(bytes.array()));
+    }
+
+    double duration() {
+        return time[time.length - 1] - time[0];
+    }
+
+    static DriveCycle load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(file.getFileName().toString(), reader);
+        }
+    }
+
+    /// The names among candidates whose table is present as a resource
+    static String[] bundled(String... candidates) {
+        return Arrays.stream(candidates)
+                .filter(name -> DriveCycle.class.getResource(resource(name)) != null)
+                .toArray(String[]::new);
+    }
+
+    /// Resource holding the table of a built-in cycle; WLTP drives the WLTC
+    static String resource(String name) {
+        String lower = name.toLowerCase();
+        return (lower.equals("wltp") ? "wltc" : lower) + ".csv";
+    }
+
+    /// Cycles bundled as resources, looked up case-insensitively by name
+    static DriveCycle builtIn(String name) {
+        InputStream in = DriveCycle.class.getResourceAsStream(resource(name));
+        if (in == null) throw new IllegalArgumentException("No built-in drive cycle " + name);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return parse(name.toUpperCase(), reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /// A built-in name or a path to a cycle file
+    static DriveCycle resolve(String nameOrPath) throws IOException {
+        for (String builtIn : BUILT_IN) {
+            if (builtIn.equalsIgnoreCase(nameOrPath)) return builtIn(builtIn);
+        }
+        return load(Path.of(nameOrPath));
+    }
+
+    static DriveCycle parse(String name, BufferedReader reader) throws IOException {
+        double[] time = new double[256];
+        double[] speed = new double[256];
+        int rows = 0;
+        int lineNumber = 0;
+        double scale = 1; // km/h per unit of the speed column
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("[,;\\s]+");
+            try {
+                if (parts.length < 2) throw new NumberFormatException();
+                double t = Double.parseDouble(parts[0]);
+                double v = Double.parseDouble(parts[1]);
+                if (rows == time.length) {
+                    time = Arrays.copyOf(time, rows * 2);
+                    speed = Arrays.copyOf(speed, rows * 2);
+                }
+                time[rows] = t;
+                speed[rows] = v * scale;
+                rows++;
+            } catch (NumberFormatException e) {
+                if (rows == 0) { // header line
+                    if (line.toLowerCase().contains("mph")) scale = KMH_PER_MPH;
+                    continue;
+                }
+                throw new IllegalArgumentException(name + ": cannot parse line " + lineNumber + ": " + line);
+            }
+        }
+        return new DriveCycle(name, Arrays.copyOf(time, rows), Arrays.copyOf(speed, rows));
+    }
+}
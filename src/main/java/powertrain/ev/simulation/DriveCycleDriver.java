@@ -0,0 +1,94 @@
+package powertrain.ev.simulation;
+
+/// Turns a drive cycle into acceleration commands for the engine: the cycle's own slope plus the
+/// drag and rolling losses the engine will subtract, corrected by a proportional term on speed error.
+/// Where the trace is at zero the command only brakes, so a stopped vehicle draws no traction power.
+/// The cycle repeats when the run is longer than it. Lookups move a cursor from the last position, so
+/// a step costs an indexed read and an interpolation.
+final class DriveCycleDriver implements DriverInput {
+    static final double SPEED_GAIN = 2.0; // 1/s
+    final DriveCycle cycle;
+    private int cursor;
+
+    DriveCycleDriver(DriveCycle cycle) {
+        this.cycle = cycle;
+    }
+
+    @Override
+    public double acceleration(SimulationEngine engine, double dt) {
+        SimulationParameters p = engine.params;
+        double t = cycle.time[0] + engine.time % cycle.duration();
+        double end = cycle.time[0] + (engine.time + dt) % cycle.duration(); // wrapped like t
+        double target = speedAt(end) / 3.6; // m/s at the end of the step
+        double speedMs = engine.vehicleSpeed / 3.6;
+        if (target <= 0) return -SPEED_GAIN * speedMs; // brake to a standstill and hold
+        double slope = (target - speedAt(t) / 3.6) / dt;
+        double drag = 0.5 * p.dragCoefficient * p.frontalArea * p.airDensity * speedMs * speedMs;
+        double rolling = p.rollingResistance * p.vehicleMass * 9.81;
+        return slope + (drag + rolling) / p.vehicleMass + SPEED_GAIN * (target - speedMs);
+    }
+
+    /// Continuous form: the trace's slope and speed at the instant itself rather than over a step
+    @Override
+    public double accelerationAt(SimulationEngine engine, double time, double speedMs) {
+        SimulationParameters p = engine.params;
+        double t = cycle.time[0] + time % cycle.duration();
+        double target = speedAt(t) / 3.6; // m/s
+        if (target <= 0) return -SPEED_GAIN * speedMs;
+        double slope = slopeAt(t) / 3.6;
+        double drag = 0.5 * p.dragCoefficient * p.frontalArea * p.airDensity * speedMs * speedMs;
+        double rolling = p.rollingResistance * p.vehicleMass * 9.81;
+        return slope + (drag + rolling) / p.vehicleMass + SPEED_GAIN * (target - speedMs);
+    }
+
+    /// The next row of the trace, ignoring one within a nanosecond so a step that just ended on a row
+    /// moves on to the following one
+    @Override
+    public double nextBreakpoint(double time) {
+        double[] times = cycle.time;
+        double t = times[0] + time % cycle.duration();
+        double passStart = time - (t - times[0]);
+        seek(Math.max(times[0], Math.min(t, times[times.length - 1])));
+        int i = cursor;
+        while (i < times.length && times[i] <= t + 1e-9) i++;
+        return i < times.length ? passStart + times[i] - times[0] : passStart + cycle.duration();
+    }
+
+    @Override
+    public String profileKey() {
+        return "cycle:" + cycle.digest;
+    }
+
+    @Override
+    public DriverInput fork() {
+        return new DriveCycleDriver(cycle);
+    }
+
+    /// Target speed (km/h) at cycle time t
+    double speedAt(double t) {
+        double[] time = cycle.time;
+        if (t <= time[0]) return cycle.speed[0];
+        int last = time.length - 1;
+        if (t >= time[last]) return cycle.speed[last];
+        seek(t);
+        double f = (t - time[cursor]) / (time[cursor + 1] - time[cursor]);
+        return cycle.speed[cursor] + (cycle.speed[cursor + 1] - cycle.speed[cursor]) * f;
+    }
+
+    /// Slope (km/h per s) of the trace segment containing cycle time t, zero outside the trace
+    double slopeAt(double t) {
+        double[] time = cycle.time;
+        if (t < time[0] || t >= time[time.length - 1]) return 0;
+        seek(t);
+        return (cycle.speed[cursor + 1] - cycle.speed[cursor]) / (time[cursor + 1] - time[cursor]);
+    }
+
+    /// Moves the cursor to the last segment starting at or before t; walks back as well, since adaptive
+    /// integrators retry from earlier times. The segment depends only on t, never on where the cursor
+    /// was, so a replay with a fresh driver interpolates exactly as the recorded run did.
+    private void seek(double t) {
+        double[] time = cycle.time;
+        while (cursor > 0 && t < time[cursor]) cursor--;
+        while (cursor + 2 < time.length && time[cursor + 1] <= t) cursor++;
+    }
+}
@@ -0,0 +1,34 @@
+package powertrain.ev.simulation;
+
+/// Source of the acceleration command, evaluated before every physics step
+interface DriverInput {
+    /// Commanded acceleration (m/s²) for the step of length dt starting at engine.time
+    double acceleration(SimulationEngine engine, double dt);
+
+    /// Command (m/s²) as a continuous function of time (s) and speed (m/s), which the higher-order
+    /// integrators evaluate at each of their stages so the command does not depend on the step size.
+    /// The default holds the command set for the step, which is exact for inputs that do not react
+    /// to the vehicle.
+    default double accelerationAt(SimulationEngine engine, double time, double speedMs) {
+        return engine.acceleration;
+    }
+
+    /// Earliest time (s) after the given one at which the command has a kink or jump, such as a corner
+    /// of a drive cycle trace. Adaptive integrators end a step there instead of stepping across it and
+    /// rejecting the attempt.
+    default double nextBreakpoint(double time) {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /// Canonical description of the whole acceleration profile for ResultCache keys, or null when the
+    /// input cannot be described up front (live or random input), which keeps such runs out of the cache
+    default String profileKey() {
+        return null;
+    }
+
+    /// The same input for a branch running concurrently from the same point; drivers that keep lookup
+    /// state return a fresh copy, stateless ones themselves
+    default DriverInput fork() {
+        return this;
+    }
+}
@@ -0,0 +1,144 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Motor efficiency over shaft torque and speed, held as one row-major array over two evenly spaced
+/// axes. A lookup computes its cell from the axis origin and spacing, so it is a constant-time bilinear
+/// interpolation with no search and no allocation. Immutable, so one instance is shared by every engine.
+/// Files hold a header row "torque\rpm,<rpm>,<rpm>,..." followed by "<torque>,<eff>,<eff>,..." rows;
+/// lines starting with '#' are ignored. Lookups outside the axes clamp to the edge.
+final class EfficiencyMap {
+    static final EfficiencyMap DEFAULT = builtIn("motor_efficiency.csv");
+    private static final Map<String, EfficiencyMap> LOADED = new ConcurrentHashMap<>();
+
+    final String name;
+    final String digest; // SHA-256 of the table, identifies it in ResultCache keys
+    private final double torque0; // Nm
+    private final double perTorque; // 1/Nm, inverse axis spacing
+    private final int torqueCount;
+    private final double rpm0; // RPM
+    private final double perRpm; // 1/RPM
+    private final int rpmCount;
+    private final double[] values; // [torque * rpmCount + rpm]
+
+    EfficiencyMap(String name, double[] torque, double[] rpm, double[] values) {
+        if (values.length != torque.length * rpm.length) {
+            throw new IllegalArgumentException(name + ": expected " + torque.length * rpm.length + " values");
+        }
+        this.name = name;
+        this.torque0 = torque[0];
+        this.perTorque = 1 / spacing(name, "torque", torque);
+        this.torqueCount = torque.length;
+        this.rpm0 = rpm[0];
+        this.perRpm = 1 / spacing(name, "rpm", rpm);
+        this.rpmCount = rpm.length;
+        this.values = values.clone();
+        for (double v : values) {
+            if (!(v > 0 && v <= 1)) throw new IllegalArgumentException(name + ": efficiency out of (0, 1]: " + v);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((torque.length + rpm.length + values.length) * Double.BYTES);
+        for (double t : torque) bytes.putDouble(t);
+        for (double r : rpm) bytes.putDouble(r);
+        for (double v : values) bytes.putDouble(v);
+        this.digest = HexFormat.of().formatHex(ResultCache.sha256().digest(bytes.array()));
+    }
+
+    /// Common step of an axis; rejects uneven spacing, which the constant-time lookup cannot represent
+    private static double spacing(String name, String axis, double[] points) {
+        if (points.length < 2) throw new IllegalArgumentException(name + ": " + axis + " axis needs two points");
+        double step = (points[points.length - 1] - points[0]) / (points.length - 1);
+        for (int i = 1; i < points.length; i++) {
+            if (!(Math.abs(points[i] - points[i - 1] - step) <= step * 1e-6)) {
+                throw new IllegalArgumentException(name + ": " + axis + " axis must be evenly spaced and increasing");
+            }
+        }
+        return step;
+    }
+
+    /// Efficiency (0-1) at the given torque (Nm) and speed (RPM); the sign of either is ignored
+    double efficiency(double torque, double rpm) {
+        double t = (Math.abs(torque) - torque0) * perTorque;
+        double r = (Math.abs(rpm) - rpm0) * perRpm;
+        /// Clamped to the outermost cell, with plain comparisons as in SimulationEngine.clamp
+        int ti = t <= 0 ? 0 : t >= torqueCount - 2 ? torqueCount - 2 : (int) t;
+        int ri = r <= 0 ? 0 : r >= rpmCount - 2 ? rpmCount - 2 : (int) r;
+        double ft = t <= 0 ? 0 : t >= ti + 1 ? 1 : t - ti;
+        double fr = r <= 0 ? 0 : r >= ri + 1 ? 1 : r - ri;
+        int i = ti * rpmCount + ri;
+        double low = values[i] + (values[i + 1] - values[i]) * fr;
+        double high = values[i + rpmCount] + (values[i + rpmCount + 1] - values[i + rpmCount]) * fr;
+        return low + (high - low) * ft;
+    }
+
+    /// Maps bundled as resources
+    static EfficiencyMap builtIn(String resource) {
+        InputStream in = EfficiencyMap.class.getResourceAsStream(resource);
+        if (in == null) throw new IllegalArgumentException("No built-in efficiency map " + resource);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return parse(resource, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /// "default" or a path to a map file; each file is parsed once and shared
+    static EfficiencyMap resolve(String nameOrPath) {
+        if (nameOrPath.equalsIgnoreCase("default")) return DEFAULT;
+        return LOADED.computeIfAbsent(nameOrPath, path -> {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+                return parse(Path.of(path).getFileName().toString(), reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    static EfficiencyMap parse(String name, BufferedReader reader) throws IOException {
+        double[] rpm = null;
+        List<Double> torque = new ArrayList<>();
+        List<double[]> rows = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("[,;\\s]+");
+            try {
+                if (rpm == null) {
+                    rpm = new double[parts.length - 1];
+                    for (int i = 1; i < parts.length; i++) rpm[i - 1] = Double.parseDouble(parts[i]);
+                    continue;
+                }
+                if (parts.length != rpm.length + 1) throw new NumberFormatException();
+                torque.add(Double.parseDouble(parts[0]));
+                double[] row = new double[rpm.length];
+                for (int i = 0; i < row.length; i++) row[i] = Double.parseDouble(parts[i + 1]);
+                rows.add(row);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + ": cannot parse line " + lineNumber + ": " + line);
+            }
+        }
+        if (rpm == null || rows.isEmpty()) throw new IllegalArgumentException(name + ": no efficiency rows");
+        double[] torqueAxis = new double[torque.size()];
+        double[] values = new double[torque.size() * rpm.length];
+        for (int t = 0; t < torqueAxis.length; t++) {
+            torqueAxis[t] = torque.get(t);
+            System.arraycopy(rows.get(t), 0, values, t * rpm.length, rpm.length);
+        }
+        return new EfficiencyMap(name, torqueAxis, rpm, values);
+    }
+}
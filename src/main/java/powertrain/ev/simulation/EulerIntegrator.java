@@ -0,0 +1,34 @@
+package powertrain.ev.simulation;
+
+/// The engine's own explicit Euler step (with the exact RC update), as the live view runs it
+final class EulerIntegrator implements Integrator {
+    private final double dt;
+
+    EulerIntegrator(double dt) {
+        if (!(dt > 0)) throw new IllegalArgumentException("Step must be positive: " + dt);
+        this.dt = dt;
+    }
+
+    @Override
+    public double advance(SimulationEngine engine, DriverInput driver, double maxStep) {
+        double h = Math.min(dt, maxStep);
+        Integrator.command(engine, driver, h);
+        engine.step(h);
+        return h;
+    }
+
+    @Override
+    public double fixedStep() {
+        return dt;
+    }
+
+    @Override
+    public Integrator fork() {
+        return new EulerIntegrator(dt);
+    }
+
+    @Override
+    public String describe() {
+        return "euler dt=" + dt;
+    }
+}
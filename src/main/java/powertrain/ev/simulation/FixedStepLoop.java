@@ -0,0 +1,116 @@
+package powertrain.ev.simulation;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/// Accumulator loop that integrates the engine at a fixed step regardless of the frame rate.
+/// Each frame runs as many sub-steps as the elapsed time allows and keeps the state before and
+/// after the last sub-step, so the display can be interpolated by the leftover fraction of a step.
+final class FixedStepLoop {
+    static final double MAX_FRAME_TIME = 0.25; // s, limits catch-up work after a stall
+    private final SimulationEngine engine;
+    private final double[] previous = new double[Channels.COUNT];
+    private final double[] current = new double[Channels.COUNT];
+    private double stepSize; // s
+    private double accumulator; // s
+    private volatile long clampedFrames; // single writer, read by the performance monitor
+    private volatile StepObserver[] observers = new StepObserver[0];
+    private volatile DriverInput driver;
+    private volatile Consumer<double[]> sampleSource; // null samples the engine
+
+    FixedStepLoop(SimulationEngine engine, double rateHz) {
+        this.engine = engine;
+        setRate(rateHz);
+        reset();
+    }
+
+    void setRate(double rateHz) {
+        if (!(rateHz > 0)) throw new IllegalArgumentException("Step rate must be positive: " + rateHz);
+        stepSize = 1.0 / rateHz;
+    }
+
+    double stepSize() {
+        return stepSize;
+    }
+
+    /// Frames whose elapsed time exceeded MAX_FRAME_TIME and were truncated
+    long clampedFrames() {
+        return clampedFrames;
+    }
+
+    /// Replaces the manual acceleration input; null hands control back to engine.acceleration
+    void setDriver(DriverInput driver) {
+        this.driver = driver;
+    }
+
+    DriverInput driver() {
+        return driver;
+    }
+
+    /// Replaces what the display state is sampled from, e.g. one vehicle of a fleet stepped by an
+    /// observer; it writes outputs indexed by Channels. null samples the engine again.
+    void setSampleSource(Consumer<double[]> source) {
+        this.sampleSource = source;
+    }
+
+    private void sample(double[] out) {
+        Consumer<double[]> source = sampleSource;
+        if (source != null) {
+            source.accept(out);
+        } else {
+            engine.sample(out);
+        }
+    }
+
+    synchronized void addObserver(StepObserver observer) {
+        StepObserver[] next = Arrays.copyOf(observers, observers.length + 1);
+        next[observers.length] = observer;
+        observers = next;
+    }
+
+    synchronized void removeObserver(StepObserver observer) {
+        observers = Arrays.stream(observers).filter(o -> o != observer).toArray(StepObserver[]::new);
+    }
+
+    void reset() {
+        accumulator = 0;
+        sample(current);
+        System.arraycopy(current, 0, previous, 0, Channels.COUNT);
+    }
+
+    /// Consumes one frame of wall time and returns the number of sub-steps taken
+    int advance(double frameTime) {
+        if (frameTime > MAX_FRAME_TIME) {
+            frameTime = MAX_FRAME_TIME;
+            clampedFrames++;
+        }
+        accumulator += frameTime;
+        int steps = (int) (accumulator / stepSize);
+        if (steps == 0) return 0;
+        accumulator -= steps * stepSize;
+        StepObserver[] notify = observers;
+        for (int i = 1; i < steps; i++) {
+            step(notify);
+        }
+        sample(previous);
+        step(notify);
+        sample(current);
+        return steps;
+    }
+
+    private void step(StepObserver[] notify) {
+        Integrator.command(engine, driver, stepSize);
+        engine.step(stepSize);
+        for (StepObserver observer : notify) {
+            observer.onStep(engine);
+        }
+    }
+
+    /// Display state between the last two sub-steps, weighted by the time still in the accumulator
+    void interpolate(double[] out) {
+        double alpha = accumulator / stepSize;
+        for (int i = 0; i < Channels.COUNT; i++) {
+            out[i] = previous[i] + (current[i] - previous[i]) * alpha;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/// Many vehicles stepped together, each with its own parameters and its own place on the drive cycle.
+/// State is held as structure-of-arrays, one primitive column per quantity indexed by vehicle, so a step
+/// is one pass over contiguous arrays with no objects to chase. The physics is SimulationEngine.step's
+/// explicit Euler scheme, with the per-vehicle constants (drag factor, rolling force, pack scaling)
+/// folded into columns once when the fleet is built. Every vehicle has the lumped battery; cellsParallel
+/// is ignored.
+/// Every vehicle follows the same drive cycle from its own start offset, or holds one acceleration when
+/// there is no cycle. The cycle is resampled onto an even CYCLE_STEP grid, so a lookup is an index
+/// computation as in BatteryModel rather than a cursor per vehicle.
+/// Usage: Fleet <spec.properties> [--vehicles N] [--duration seconds[s|m|h]] [--rate Hz] [--realtime]
+/// The spec is MonteCarlo's: any numeric parameter may be a distribution, drawn for each vehicle. Run
+/// settings are vehicles (default 10000), rate (default 100 Hz), duration (default one cycle), cycle
+/// (default NEDC, none holds acceleration), acceleration and seed. --realtime paces the steps to wall
+/// time and reports how far behind it fell.
+public final class Fleet {
+    static final int DEFAULT_VEHICLES = 10_000;
+    static final double DEFAULT_RATE = 100; // Hz
+    static final double CYCLE_STEP = 0.1; // s, grid of the resampled cycle
+    /// Indices into aggregate()
+    static final int STAT_VEHICLES = 0;
+    static final int STAT_MEAN_SOC = 1; // %
+    static final int STAT_MIN_SOC = 2;
+    static final int STAT_MAX_SOC = 3;
+    static final int STAT_MEAN_SPEED = 4; // km/h
+    static final int STAT_ENERGY = 5; // kWh, whole fleet
+    static final int STAT_WH_PER_KM = 6; // fleet energy over fleet distance
+    static final int STAT_MAX_TEMP = 7; // °C
+    static final int STAT_STEP_MICROS = 8; // wall time of one fleet step, filled in by Stepper
+    static final int STATS = 9;
+
+    final int size;
+    private final EfficiencyMap efficiencyMap; // shared by every vehicle
+    private final double[] cycleSpeed; // m/s on the CYCLE_STEP grid, null without a cycle
+    private final double cycleDuration; // s
+    private final double acceleration; // m/s², held without a cycle
+    /// Per-vehicle constants
+    final SimulationParameters[] params;
+    private final double[] offset; // s into the cycle at time 0
+    private final double[] mass; // kg
+    private final double[] dragFactor; // N/(m/s)², ½·Cd·A·ρ
+    private final double[] rollingForce; // N
+    private final double[] maxAccel; // m/s²
+    private final double[] drivePower; // kW, motor power times the drive mode's power factor
+    private final double[] motorPower; // kW
+    private final double[] rpmPerKmh;
+    private final double[] torquePerForce; // m, wheel radius over gear ratio
+    private final double[] regenShare; // share of the demand credited back when braking, 0 without regen
+    private final double[] ambient; // °C
+    private final double[] thermalMass; // J/°C
+    private final double[] seriesCells;
+    private final double[] socPerAmpSecond; // % per A·s
+    private final double[] resistance25; // Ω
+    /// Per-vehicle state
+    final double[] speed; // km/h
+    final double[] distance; // km
+    final double[] soc; // %
+    final double[] energy; // kWh
+    final double[] voltage; // V
+    final double[] current; // A
+    final double[] rc1; // V
+    final double[] rc2; // V
+    final double[] temp; // °C
+    final double[] peakTemp; // °C
+    final double[] rpm;
+    final double[] torque; // Nm
+    double time; // simulated s
+    long steps;
+    /// RC decay factors, recomputed only when the step size changes
+    private double cachedDt = Double.NaN;
+    private double decay1;
+    private double decay2;
+
+    Fleet(SimulationParameters[] params, DriveCycle cycle, double[] offset, double acceleration) {
+        if (params.length == 0) throw new IllegalArgumentException("A fleet needs at least one vehicle");
+        if (offset.length != params.length) throw new IllegalArgumentException("One cycle offset per vehicle");
+        size = params.length;
+        this.params = params;
+        this.offset = offset.clone();
+        this.acceleration = acceleration;
+        efficiencyMap = params[0].efficiencyMap;
+        cycleSpeed = cycle != null ? resample(cycle) : null;
+        cycleDuration = cycle != null ? cycle.duration() : 0;
+        mass = new double[size];
+        dragFactor = new double[size];
+        rollingForce = new double[size];
+        maxAccel = new double[size];
+        drivePower = new double[size];
+        motorPower = new double[size];
+        rpmPerKmh = new double[size];
+        torquePerForce = new double[size];
+        regenShare = new double[size];
+        ambient = new double[size];
+        thermalMass = new double[size];
+        seriesCells = new double[size];
+        socPerAmpSecond = new double[size];
+        resistance25 = new double[size];
+        for (int i = 0; i < size; i++) {
+            SimulationParameters p = params[i];
+            if (p.efficiencyMap != efficiencyMap) {
+                throw new IllegalArgumentException("All vehicles of a fleet share one efficiency map");
+            }
+            mass[i] = p.vehicleMass;
+            dragFactor[i] = 0.5 * p.dragCoefficient * p.frontalArea * p.airDensity;
+            rollingForce[i] = p.rollingResistance * p.vehicleMass * 9.81;
+            maxAccel[i] = p.maxAccel;
+            drivePower[i] = p.motorPower * p.powerFactor;
+            motorPower[i] = p.motorPower;
+            rpmPerKmh[i] = p.gearRatio / (0.377 * SimulationEngine.WHEEL_RADIUS);
+            torquePerForce[i] = SimulationEngine.WHEEL_RADIUS / p.gearRatio;
+            regenShare[i] = p.regenBraking ? p.regenEfficiency * 0.5 : 0;
+            ambient[i] = p.ambientTemp;
+            thermalMass[i] = p.thermalMass;
+            seriesCells[i] = BatteryModel.seriesCells(p);
+            socPerAmpSecond[i] = 100 / (3600 * BatteryModel.capacityAh(p));
+            resistance25[i] = BatteryModel.seriesResistance(p);
+        }
+        speed = new double[size];
+        distance = new double[size];
+        soc = new double[size];
+        energy = new double[size];
+        voltage = new double[size];
+        current = new double[size];
+        rc1 = new double[size];
+        rc2 = new double[size];
+        temp = new double[size];
+        peakTemp = new double[size];
+        rpm = new double[size];
+        torque = new double[size];
+        reset();
+    }
+
+    /// Draws the vehicles' parameters over base, in vehicle order from one generator, and spreads their
+    /// start offsets evenly at random over the cycle
+    static Fleet generate(SimulationParameters base, List<String> keys, List<MonteCarlo.Distribution> distributions,
+                          int vehicles, DriveCycle cycle, double acceleration, long seed) {
+        if (vehicles <= 0) throw new IllegalArgumentException("vehicles must be positive: " + vehicles);
+        SplittableRandom rng = new SplittableRandom(seed);
+        SimulationParameters[] params = new SimulationParameters[vehicles];
+        double[] offset = new double[vehicles];
+        for (int i = 0; i < vehicles; i++) {
+            params[i] = base.copy();
+            for (int k = 0; k < keys.size(); k++) {
+                params[i].set(keys.get(k), Double.toString(distributions.get(k).sample(rng)));
+            }
+            offset[i] = cycle != null ? rng.nextDouble() * cycle.duration() : 0;
+        }
+        return new Fleet(params, cycle, offset, acceleration);
+    }
+
+    /// A fleet drawn around one set of parameters, as the interactive app builds it: see spread
+    static Fleet around(SimulationParameters base, int vehicles, DriveCycle cycle, long seed) {
+        List<String> keys = new ArrayList<>();
+        List<MonteCarlo.Distribution> distributions = new ArrayList<>();
+        SimulationParameters center = MonteCarlo.parseParameters(spread(base), base.copy(), keys, distributions);
+        return generate(center, keys, distributions, vehicles, cycle, 0, seed);
+    }
+
+    /// Spec varying mass, drag and rolling resistance by 10 % (clamped to ±30 %), ambient temperature
+    /// by 5 °C and regen efficiency by ±0.1 around p
+    static Properties spread(SimulationParameters p) {
+        Properties spec = new Properties();
+        spec.setProperty("vehicleMass", relative(p.vehicleMass));
+        spec.setProperty("dragCoefficient", relative(p.dragCoefficient));
+        spec.setProperty("rollingResistance", relative(p.rollingResistance));
+        spec.setProperty("ambientTemp", String.format(Locale.ROOT, "normal(%s,5,%s,%s)",
+                p.ambientTemp, p.ambientTemp - 15, p.ambientTemp + 15));
+        spec.setProperty("regenEfficiency", String.format(Locale.ROOT, "uniform(%s,%s)",
+                Math.max(0, p.regenEfficiency - 0.1), Math.min(1, p.regenEfficiency + 0.1)));
+        return spec;
+    }
+
+    private static String relative(double mean) {
+        return String.format(Locale.ROOT, "normal(%s,%s,%s,%s)", mean, 0.1 * mean, 0.7 * mean, 1.3 * mean);
+    }
+
+    /// Spec keys as for MonteCarlo, plus vehicles; duration and rate are left to the caller
+    static Fleet parse(Properties spec) throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<MonteCarlo.Distribution> distributions = new ArrayList<>();
+        SimulationParameters base = MonteCarlo.parseParameters(spec, keys, distributions);
+        String cycleName = spec.getProperty("cycle", "NEDC").trim();
+        DriveCycle cycle = cycleName.equalsIgnoreCase("none") ? null : DriveCycle.resolve(cycleName);
+        int vehicles = (int) SimulationParameters.number(spec, "vehicles", DEFAULT_VEHICLES);
+        double acceleration = SimulationParameters.number(spec, "acceleration", 0);
+        long seed = Long.parseLong(spec.getProperty("seed", "1").trim());
+        return generate(base, keys, distributions, vehicles, cycle, acceleration, seed);
+    }
+
+    /// Cycle speed (m/s) at every multiple of CYCLE_STEP from the start to the end, plus one more so a
+    /// lookup at the very end still has a right-hand neighbour
+    private static double[] resample(DriveCycle cycle) {
+        int cells = (int) Math.ceil(cycle.duration() / CYCLE_STEP);
+        double[] grid = new double[cells + 2];
+        double[] time = cycle.time;
+        int row = 0;
+        for (int k = 0; k < grid.length; k++) {
+            double t = Math.min(time[0] + k * CYCLE_STEP, time[time.length - 1]);
+            while (row < time.length - 2 && time[row + 1] < t) row++;
+            double f = (t - time[row]) / (time[row + 1] - time[row]);
+            grid[k] = (cycle.speed[row] + (cycle.speed[row + 1] - cycle.speed[row]) * f) / 3.6;
+        }
+        return grid;
+    }
+
+    /// Back to the start: full, at rest and at ambient temperature; parameters and offsets are kept
+    void reset() {
+        for (int i = 0; i < size; i++) {
+            speed[i] = 0;
+            distance[i] = 0;
+            soc[i] = 100;
+            energy[i] = 0;
+            voltage[i] = seriesCells[i] * BatteryModel.cellOcv(100);
+            current[i] = 0;
+            rc1[i] = 0;
+            rc2[i] = 0;
+            temp[i] = ambient[i];
+            peakTemp[i] = ambient[i];
+            rpm[i] = 0;
+            torque[i] = 0;
+        }
+        time = 0;
+        steps = 0;
+    }
+
+    /// Cycle speed (m/s) at t seconds from the cycle start, 0 <= t; clamped past the end
+    private double cycleSpeedAt(double t) {
+        double x = t * (1 / CYCLE_STEP);
+        int last = cycleSpeed.length - 2;
+        int i = x >= last ? last : (int) x;
+        double f = x >= last ? 1 : x - i;
+        return cycleSpeed[i] + (cycleSpeed[i + 1] - cycleSpeed[i]) * f;
+    }
+
+    /// Advances every vehicle by dt. Each vehicle first gets DriveCycleDriver's command for its place
+    /// on the cycle, then the same update as SimulationEngine.step.
+    void step(double dt) {
+        if (dt != cachedDt) {
+            cachedDt = dt;
+            decay1 = Math.exp(-dt / BatteryModel.TAU1);
+            decay2 = Math.exp(-dt / BatteryModel.TAU2);
+        }
+        boolean cycle = cycleSpeed != null;
+        EfficiencyMap map = efficiencyMap;
+        double gain = DriveCycleDriver.SPEED_GAIN;
+        for (int i = 0; i < size; i++) {
+            /// Driver
+            double speedMs = speed[i] / 3.6;
+            double drag = dragFactor[i] * speedMs * speedMs;
+            double command = acceleration;
+            if (cycle) {
+                double t = (time + offset[i]) % cycleDuration;
+                double next = t + dt; // wrapped like t, by subtraction since a step is shorter than the cycle
+                double target = cycleSpeedAt(next >= cycleDuration ? next - cycleDuration : next);
+                command = target <= 0
+                        ? -gain * speedMs
+                        : (target - cycleSpeedAt(t)) / dt + (drag + rollingForce[i]) / mass[i] + gain * (target - speedMs);
+            }
+            double limit = maxAccel[i];
+            double accel = command <= -limit ? -limit : command >= limit ? limit : command;
+            /// Vehicle and motor
+            double force = mass[i] * accel;
+            speedMs += (force - drag - rollingForce[i]) / mass[i] * dt;
+            double kmh = speedMs * 3.6;
+            kmh = kmh <= 0 ? 0 : kmh >= 180 ? 180 : kmh;
+            speed[i] = kmh;
+            double motorRpm = kmh * rpmPerKmh[i];
+            rpm[i] = motorRpm;
+            double efficiency = map.efficiency(force * torquePerForce[i], motorRpm);
+            double motorSpeed = motorRpm / 60 * 2 * Math.PI; // rad/s
+            torque[i] = drivePower[i] * 1000 / ((motorSpeed > 0.1 ? motorSpeed : 0.1) * efficiency);
+            distance[i] += kmh / 3600 * dt;
+            /// Battery
+            double batteryTemp = temp[i];
+            double charge = soc[i];
+            double tempEfficiency = 1.0 - (batteryTemp > 40 ? (batteryTemp - 40) * 0.01 : 0);
+            double powerUse = drivePower[i] * (0.5 + 0.5 * Math.abs(accel)) / (efficiency * tempEfficiency);
+            double packPower = powerUse;
+            if (accel < 0 && charge < 95) packPower -= regenShare[i] * powerUse * (charge > 80 ? 0.5 : 1.0);
+            double r0 = resistance25[i] * BatteryModel.resistanceFactor(batteryTemp);
+            double source = seriesCells[i] * BatteryModel.cellOcv(charge) - rc1[i] - rc2[i];
+            double amps = BatteryModel.current(packPower * 1000, source, r0);
+            double volts = source - amps * r0;
+            current[i] = amps;
+            voltage[i] = volts;
+            rc1[i] = rc1[i] * decay1 + BatteryModel.R1_SHARE * r0 * amps * (1 - decay1);
+            rc2[i] = rc2[i] * decay2 + BatteryModel.R2_SHARE * r0 * amps * (1 - decay2);
+            energy[i] += volts * amps * dt * (1 / 3.6e6);
+            charge -= amps * dt * socPerAmpSecond[i];
+            soc[i] = charge <= 0 ? 0 : charge >= 100 ? 100 : charge;
+            /// Temperature
+            double heatInput = (powerUse / motorPower[i]) * 0.1;
+            double cooling = 0.05 * (batteryTemp - ambient[i]);
+            batteryTemp += (heatInput - cooling) / thermalMass[i] * dt;
+            batteryTemp = batteryTemp <= 10 ? 10 : batteryTemp >= 70 ? 70 : batteryTemp;
+            temp[i] = batteryTemp;
+            if (batteryTemp > peakTemp[i]) peakTemp[i] = batteryTemp;
+        }
+        time += dt;
+        steps++;
+    }
+
+    /// Writes one vehicle's outputs into out, indexed by Channels as SimulationEngine.sample does
+    void sample(int vehicle, double[] out) {
+        out[Channels.VOLTAGE] = voltage[vehicle];
+        out[Channels.CURRENT] = current[vehicle];
+        out[Channels.SPEED] = speed[vehicle];
+        out[Channels.TEMP] = temp[vehicle];
+        out[Channels.SOC] = soc[vehicle];
+        out[Channels.TORQUE] = torque[vehicle];
+        out[Channels.EFFICIENCY] = distance[vehicle] > 0 ? energy[vehicle] * 1000 / distance[vehicle] : 0;
+        out[Channels.RPM] = rpm[vehicle];
+        out[Channels.DISTANCE] = distance[vehicle];
+        out[Channels.ENERGY] = energy[vehicle];
+        out[Channels.CELL_TEMP_MIN] = temp[vehicle];
+        out[Channels.CELL_TEMP_MAX] = temp[vehicle];
+        out[Channels.SOC_SPREAD] = 0;
+    }
+
+    /// Fleet-wide statistics in one pass, indexed by the STAT_ constants
+    void aggregate(double[] out) {
+        double socSum = 0, minSoc = Double.POSITIVE_INFINITY, maxSoc = Double.NEGATIVE_INFINITY;
+        double speedSum = 0, energySum = 0, distanceSum = 0, maxTemp = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            double charge = soc[i];
+            socSum += charge;
+            if (charge < minSoc) minSoc = charge;
+            if (charge > maxSoc) maxSoc = charge;
+            speedSum += speed[i];
+            energySum += energy[i];
+            distanceSum += distance[i];
+            if (temp[i] > maxTemp) maxTemp = temp[i];
+        }
+        out[STAT_VEHICLES] = size;
+        out[STAT_MEAN_SOC] = socSum / size;
+        out[STAT_MIN_SOC] = minSoc;
+        out[STAT_MAX_SOC] = maxSoc;
+        out[STAT_MEAN_SPEED] = speedSum / size;
+        out[STAT_ENERGY] = energySum;
+        out[STAT_WH_PER_KM] = distanceSum > 0 ? energySum * 1000 / distanceSum : 0;
+        out[STAT_MAX_TEMP] = maxTemp;
+    }
+
+    /// Steps a fleet alongside the interactive engine at the fleet's own fixed rate, following the
+    /// engine's simulated time, and publishes the aggregates every STATS_INTERVAL of it. Simulation
+    /// thread only; the statistics are read through the StateBuffer.
+    static final class Stepper implements StepObserver {
+        static final double STATS_INTERVAL = 0.1; // simulated s
+        final Fleet fleet;
+        final StateBuffer stats = new StateBuffer(STATS);
+        private final double dt; // s
+        private final double[] aggregate = new double[STATS];
+        private double lastTime = Double.NaN; // engine time at the previous step
+        private double pending; // s of engine time the fleet has yet to follow
+        private double nextStats; // fleet s
+        private long stepNanos; // since the last published statistics
+        private int stepsTimed;
+
+        Stepper(Fleet fleet, double rateHz) {
+            if (!(rateHz > 0)) throw new IllegalArgumentException("Fleet rate must be positive: " + rateHz);
+            this.fleet = fleet;
+            this.dt = 1 / rateHz;
+            publish();
+        }
+
+        /// Starts the fleet over, e.g. with a reset of the engine
+        void reset() {
+            fleet.reset();
+            lastTime = Double.NaN;
+            pending = 0;
+            nextStats = 0;
+            publish();
+        }
+
+        /// Time that runs backwards (a reset or a restore of the engine) is not followed; the fleet
+        /// carries on from where it is
+        @Override
+        public void onStep(SimulationEngine engine) {
+            double elapsed = engine.time - lastTime;
+            lastTime = engine.time;
+            if (elapsed > 0) pending += elapsed;
+            while (pending >= dt) {
+                long start = System.nanoTime();
+                fleet.step(dt);
+                stepNanos += System.nanoTime() - start;
+                stepsTimed++;
+                pending -= dt;
+            }
+            if (fleet.time >= nextStats) {
+                nextStats = fleet.time + STATS_INTERVAL;
+                publish();
+            }
+        }
+
+        private void publish() {
+            fleet.aggregate(aggregate);
+            aggregate[STAT_STEP_MICROS] = stepsTimed > 0 ? stepNanos / 1e3 / stepsTimed : 0;
+            stats.publish(aggregate);
+            stepNanos = 0;
+            stepsTimed = 0;
+        }
+    }
+
+    String report() {
+        double[] range = new double[size];
+        double[] whPerKm = new double[size];
+        for (int i = 0; i < size; i++) {
+            double used = (100 - soc[i]) / 100;
+            range[i] = used > 0 ? distance[i] / used : Double.NaN;
+            whPerKm[i] = distance[i] > 0 ? energy[i] * 1000 / distance[i] : Double.NaN;
+        }
+        StringBuilder text = new StringBuilder(MonteCarlo.Statistics.header());
+        text.append(new MonteCarlo.Statistics("SoC (%)", soc).row());
+        text.append(new MonteCarlo.Statistics("Distance (km)", distance).row());
+        text.append(new MonteCarlo.Statistics("Range (km)", range).row());
+        text.append(new MonteCarlo.Statistics("Wh/km", whPerKm).row());
+        text.append(new MonteCarlo.Statistics("Peak temp (°C)", peakTemp).row());
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Fleet <spec.properties> [--vehicles N] [--duration seconds[s|m|h]]"
+                    + " [--rate Hz] [--realtime]");
+            System.exit(2);
+        }
+        Properties spec = SimulationParameters.readProperties(Path.of(args[0]));
+        boolean realtime = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--vehicles" -> spec.setProperty("vehicles", args[++i]);
+                case "--duration" -> spec.setProperty("duration", args[++i]);
+                case "--rate" -> spec.setProperty("rate", args[++i]);
+                case "--realtime" -> realtime = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Fleet fleet = parse(spec);
+        double rate = SimulationParameters.number(spec, "rate", DEFAULT_RATE);
+        if (!(rate > 0)) throw new IllegalArgumentException("rate must be positive: " + rate);
+        String durationText = spec.getProperty("duration");
+        double duration = durationText != null ? BatchRunner.parseDuration(durationText.trim())
+                : fleet.cycleSpeed != null ? fleet.cycleDuration : 3600;
+        double dt = 1 / rate;
+        long steps = (long) Math.ceil(duration * rate - 1e-9);
+        System.out.printf(Locale.ROOT, "Fleet: %d vehicles at %.0f Hz for %.0f s%s%n", fleet.size, rate, duration,
+                realtime ? ", paced to wall time" : "");
+
+        LatencyHistogram stepTime = new LatencyHistogram();
+        long late = 0;
+        long start = System.nanoTime();
+        for (long s = 0; s < steps; s++) {
+            if (realtime) {
+                long due = start + (long) (s * dt * 1e9);
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                else if (s > 0 && -wait > dt * 1e9) late++;
+            }
+            long stepStart = System.nanoTime();
+            fleet.step(dt);
+            stepTime.record(System.nanoTime() - stepStart);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.print(fleet.report());
+        LatencySummary summary = stepTime.summary();
+        System.out.printf(Locale.ROOT, "%nStep: p50 %.3f ms, p99 %.3f ms, max %.3f ms (budget %.3f ms)%n",
+                summary.getP50Micros() / 1000, summary.getP99Micros() / 1000, summary.getMaxMicros() / 1000,
+                dt * 1000);
+        System.out.printf(Locale.ROOT, "Wall Time: %.3f s, %.3g vehicle-steps/s, %.1fx real time%s%n", seconds,
+                fleet.size * (double) steps / seconds, duration / seconds,
+                realtime ? ", " + late + " steps more than one step late" : "");
+    }
+}
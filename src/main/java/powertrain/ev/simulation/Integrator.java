@@ -0,0 +1,44 @@
+package powertrain.ev.simulation;
+
+/// Time-stepping scheme for headless runs. Each call advances the engine by one accepted step. Euler
+/// asks the driver for one command per step, like the live view; the higher-order schemes evaluate the
+/// driver's continuous form at every stage, so their result converges as the step shrinks.
+/// Instances keep scratch arrays and step-size state: use one per run.
+interface Integrator {
+    /// Advances the engine by one accepted step of at most maxStep seconds and returns its length
+    double advance(SimulationEngine engine, DriverInput driver, double maxStep);
+
+    /// Step size of fixed-step schemes, NaN for adaptive ones
+    double fixedStep();
+
+    /// Scheme and settings, e.g. "rk4 dt=0.01"; part of ResultCache keys
+    String describe();
+
+    /// A new instance in this one's step-size state, for a branch continuing the same run; scratch
+    /// arrays are not shared
+    Integrator fork();
+
+    /// euler, rk4 or dopri5. dt is the step of the fixed schemes and the first trial step of dopri5,
+    /// which then keeps its local error within tolerance (relative, and absolute on each state's scale).
+    static Integrator create(String name, double dt, double tolerance) {
+        return switch (name.toLowerCase()) {
+            case "euler" -> new EulerIntegrator(dt);
+            case "rk4" -> new Rk4Integrator(dt);
+            case "dopri5" -> new DormandPrinceIntegrator(dt, tolerance);
+            default -> throw new IllegalArgumentException("Unknown integrator: " + name + " (euler, rk4, dopri5)");
+        };
+    }
+
+    /// Sets the acceleration command for a step of length h starting at the engine's current time
+    static void command(SimulationEngine engine, DriverInput driver, double h) {
+        if (driver != null) engine.acceleration = driver.acceleration(engine, h);
+    }
+
+    /// Model derivatives at offset seconds into the step, with the driver's command at that instant
+    static void evaluate(SimulationEngine engine, DriverInput driver, double offset, double[] y, double[] dy) {
+        if (driver != null) {
+            engine.acceleration = driver.accelerationAt(engine, engine.time + offset, y[SimulationEngine.S_SPEED]);
+        }
+        engine.derivatives(y, dy);
+    }
+}
@@ -0,0 +1,75 @@
+package powertrain.ev.simulation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/// Log-linear histogram of durations in nanoseconds: each power of two is split into eight buckets, so a
+/// reported percentile is within 12.5 % of the true value from 8 ns up to about 18 minutes. Recording is
+/// one bucket computation and two ordered stores, with a single writer thread per histogram. Readers on
+/// other threads (JMX, the overlay) see counts since the last reset, which subtracts a baseline instead
+/// of clearing, so it never races the writer.
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns ≈ 18 min; longer durations share the top bucket
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong(); // ns
+    private final long[] baseline = new long[BUCKETS];
+    private long baselineTotal;
+
+    /// Writer side
+    void record(long nanos) {
+        int i = bucket(nanos);
+        counts.lazySet(i, counts.get(i) + 1);
+        total.lazySet(total.get() + nanos);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB) return nanos < 0 ? 0 : (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /// Largest duration (ns) that falls into bucket i
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exponent = i / SUB + SUB_BITS - 1;
+        long sub = i % SUB;
+        return ((SUB + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) baseline[i] = counts.get(i);
+        baselineTotal = total.get();
+    }
+
+    synchronized LatencySummary summary() {
+        long[] since = new long[BUCKETS];
+        long count = 0;
+        int highest = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            since[i] = counts.get(i) - baseline[i];
+            count += since[i];
+            if (since[i] > 0) highest = i;
+        }
+        if (count == 0) return new LatencySummary(0, 0, 0, 0, 0, 0);
+        double mean = (double) (total.get() - baselineTotal) / count;
+        return new LatencySummary(count, mean / 1000, percentile(since, count, 0.50) / 1000.0,
+                percentile(since, count, 0.90) / 1000.0, percentile(since, count, 0.99) / 1000.0,
+                upperBound(highest) / 1000.0);
+    }
+
+    private static long percentile(long[] counts, long count, double fraction) {
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(counts.length - 1);
+    }
+}
@@ -9,96 +9,143 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.converter.DoubleStringConverter;
-import java.io.FileWriter;
+import javafx.concurrent.Task;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Main extends Application {
-    private static final int WAVE_POINTS = 200;
-    private static final double SIM_UPDATE_MS = 16.67; // ~60 FPS
+    private static final double SAMPLE_RATE = 60; // Hz, waveform samples published by the simulation thread
     private static final DecimalFormat DF = new DecimalFormat("#.##");
     private static final SimpleDateFormat SDF = new SimpleDateFormat("yyyyMMdd_HHmmss");
+    private static final String MANUAL_DRIVING = "Manual";
+    private static final String LOAD_CYCLE = "Load File...";
+    private static final double WHAT_IF_DURATION = 600; // s of simulated driving per branch
+    private static final long FLEET_SEED = 1;
+    /// Status readout of one value; the label text is only replaced when the formatted value changes
+    private static class StatusLabel {
+        final Label label = new Label();
+        final int channel; // Channels index, -1 for a derived value
+        final String unit;
+
+        StatusLabel(int channel, String unit) {
+            this.channel = channel;
+            this.unit = unit;
+            show(0);
+        }
+
+        void show(double value) {
+            String text = Double.isNaN(value) ? "–" : DF.format(value) + unit;
+            if (!text.equals(label.getText())) label.setText(text);
+        }
+    }
+
     private static class EVSimulation {
         /// Battery
         DoubleProperty batteryVoltage = new SimpleDoubleProperty(400); // V
         DoubleProperty batteryCapacity = new SimpleDoubleProperty(60); // kWh
-        DoubleProperty soc = new SimpleDoubleProperty(100); // %
-        DoubleProperty batteryTemp = new SimpleDoubleProperty(25); // °C
         DoubleProperty thermalMass = new SimpleDoubleProperty(1000); // J/°C
+        DoubleProperty ambientTemp = new SimpleDoubleProperty(25); // °C
+        DoubleProperty cellsParallel = new SimpleDoubleProperty(0); // cells per series group, 0 for the lumped battery
+        DoubleProperty cellSpread = new SimpleDoubleProperty(2); // %
         /// Motor
         DoubleProperty motorPower = new SimpleDoubleProperty(150); // kW
-        DoubleProperty motorTorque = new SimpleDoubleProperty(0); // Nm
-        DoubleProperty motorRpm = new SimpleDoubleProperty(0); // RPM
         DoubleProperty gearRatio = new SimpleDoubleProperty(8.0); // Configurable gear ratio
         /// Vehicle
-        DoubleProperty vehicleSpeed = new SimpleDoubleProperty(0); // km/h
         DoubleProperty acceleration = new SimpleDoubleProperty(0); // m/s²
         DoubleProperty vehicleMass = new SimpleDoubleProperty(1500); // kg
         DoubleProperty dragCoefficient = new SimpleDoubleProperty(0.3);
         DoubleProperty frontalArea = new SimpleDoubleProperty(2.5); // m²
         DoubleProperty airDensity = new SimpleDoubleProperty(1.225); // kg/m³
         DoubleProperty rollingResistance = new SimpleDoubleProperty(0.01);
-        DoubleProperty distance = new SimpleDoubleProperty(0); // km
-        DoubleProperty energyConsumed = new SimpleDoubleProperty(0); // kWh
         DoubleProperty regenEfficiency = new SimpleDoubleProperty(0.5); // 0.0-1.0
-        DoubleProperty energyEfficiency = new SimpleDoubleProperty(0); // Wh/km
         /// Modes and State
         StringProperty driveMode = new SimpleStringProperty("Normal");
-        BooleanProperty isRunning = new SimpleBooleanProperty(false);
-        BooleanProperty isPaused = new SimpleBooleanProperty(false);
+        StringProperty driveCycle = new SimpleStringProperty(MANUAL_DRIVING);
         BooleanProperty regenBraking = new SimpleBooleanProperty(true);
+        DoubleProperty physicsRate = new SimpleDoubleProperty(1000); // Hz, fixed integration rate
+        DoubleProperty displayRate = new SimpleDoubleProperty(30); // Hz, status label refresh
+        DoubleProperty fleetSize = new SimpleDoubleProperty(0); // vehicles, 0 for none
         /// Waveform Toggles
         BooleanProperty showVoltage = new SimpleBooleanProperty(true);
         BooleanProperty showCurrent = new SimpleBooleanProperty(true);
         BooleanProperty showSpeed = new SimpleBooleanProperty(true);
         BooleanProperty showTemp = new SimpleBooleanProperty(true);
+        BooleanProperty showPerformance = new SimpleBooleanProperty(false);
     }
 
     private final EVSimulation sim = new EVSimulation();
-    private final double[] voltageWave = new double[WAVE_POINTS];
-    private final double[] currentWave = new double[WAVE_POINTS];
-    private final double[] speedWave = new double[WAVE_POINTS];
-    private final double[] tempWave = new double[WAVE_POINTS];
-    private final double[] socWave = new double[WAVE_POINTS];
-    private final double[] torqueWave = new double[WAVE_POINTS];
-    private final double[] efficiencyWave = new double[WAVE_POINTS];
-    private int waveIndex = 0;
-    private long lastTime = 0;
-    private final AtomicBoolean isSimulationRunning = new AtomicBoolean(false);
+    private final SimulationParameters params = new SimulationParameters();
+    private final SimulationEngine engine = new SimulationEngine(params);
+    private final WaveformHistory history = new WaveformHistory(WaveformPanel.CHANNELS); // FX thread
+    private Checkpoint checkpoint;
+    private final FixedStepLoop stepLoop = new FixedStepLoop(engine, 1000);
+    private final double[] display = new double[Channels.COUNT];
+    private final double[] shown = new double[Channels.COUNT];
+    private final StatusLabel[] statusLabels = {
+            new StatusLabel(Channels.SPEED, " km/h"),
+            new StatusLabel(Channels.SOC, " %"),
+            new StatusLabel(Channels.DISTANCE, " km"),
+            new StatusLabel(Channels.ENERGY, " kWh"),
+            new StatusLabel(Channels.TORQUE, " Nm"),
+            new StatusLabel(Channels.RPM, " RPM"),
+            new StatusLabel(Channels.TEMP, " °C"),
+            new StatusLabel(Channels.EFFICIENCY, " Wh/km"),
+            new StatusLabel(Channels.CELL_TEMP_MIN, " °C"),
+            new StatusLabel(Channels.CELL_TEMP_MAX, " °C"),
+            new StatusLabel(Channels.SOC_SPREAD, " %")
+    };
+    private final StatusLabel rangeLabel = new StatusLabel(-1, " km");
+    private final Label fleetLabel = new Label("–");
+    private final double[] fleetStats = new double[Fleet.STATS];
+    private Fleet.Stepper fleet; // FX thread; stepped on the simulation thread
+    private int inspected; // FX thread, fleet vehicle number shown in the waveforms and status, 0 for the own vehicle
+    private long lastStatusUpdate = 0;
+    private SimulationThread simulation;
+    private final PerformanceMonitor monitor = new PerformanceMonitor();
+    private final RangePredictor rangePredictor = new RangePredictor(stepLoop, monitor);
+    private final Label performanceOverlay = new Label();
+    private long lastOverlayUpdate = 0;
     private AnimationTimer simulationTimer;
-    /// Drive mode parameters: {maxAccel (m/s²), powerFactor}
-    private static final Map<String, double[]> DRIVE_MODES = new HashMap<>();
-    static {
-        DRIVE_MODES.put("Eco", new double[]{0.5, 0.7});
-        DRIVE_MODES.put("Normal", new double[]{1.0, 1.0});
-        DRIVE_MODES.put("Sport", new double[]{1.5, 1.3});
-    }
+    private TelemetryRecorder recorder;
+    private TelemetryServer telemetryServer;
+    private SessionRecorder session; // simulation thread only
+    private Path lastRecording;
+    private final Map<String, DriveCycle> driveCycles = new HashMap<>();
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ev-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /// What-If gets its own thread so a run never waits behind an export, or an export behind a run
+    private final ExecutorService whatIfExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ev-whatif");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void start(Stage primaryStage) {
-        for (int i = 0; i < WAVE_POINTS; i++) {
-            voltageWave[i] = sim.batteryVoltage.get();
-            currentWave[i] = 0;
-            speedWave[i] = 0;
-            tempWave[i] = sim.batteryTemp.get();
-            socWave[i] = sim.soc.get();
-            torqueWave[i] = 0;
-            efficiencyWave[i] = 0;
-        }
-
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(8));
         root.setStyle("-fx-font-size: 14px;");
@@ -131,6 +178,15 @@ public class Main extends Application {
         gearRatioField.setPrefWidth(150);
         TextField thermalMassField = createNumericField(sim.thermalMass, 500, 2000);
         thermalMassField.setPrefWidth(150);
+        TextField ambientField = createNumericField(sim.ambientTemp, -20, 45);
+        ambientField.setPrefWidth(150);
+        TextField cellsField = createNumericField(sim.cellsParallel, 0, SimulationParameters.MAX_CELLS_PARALLEL);
+        cellsField.setPrefWidth(150);
+        cellsField.setTooltip(new Tooltip("Cells in parallel per series group of a cell-level pack model, "
+                + "e.g. 4 for about 430 cells at 400 V; 0 for the lumped battery"));
+        TextField cellSpreadField = createNumericField(sim.cellSpread, 0, 10);
+        cellSpreadField.setPrefWidth(150);
+        cellSpreadField.setTooltip(new Tooltip("Standard deviation of cell capacity and resistance"));
         CheckBox regenCheck = new CheckBox("Regen Braking");
         regenCheck.selectedProperty().bindBidirectional(sim.regenBraking);
         Slider regenSlider = new Slider(0, 100, 50);
@@ -145,6 +201,23 @@ public class Main extends Application {
         accelSpinner.setPrefWidth(150);
         accelSpinner.setDisable(true);
         sim.acceleration.bind(accelSpinner.valueProperty());
+        ComboBox<String> driveCycleCombo = new ComboBox<>();
+        driveCycleCombo.getItems().add(MANUAL_DRIVING);
+        driveCycleCombo.getItems().addAll(DriveCycle.BUILT_IN);
+        driveCycleCombo.getItems().add(LOAD_CYCLE);
+        driveCycleCombo.valueProperty().bindBidirectional(sim.driveCycle);
+        driveCycleCombo.setPrefWidth(150);
+        sim.driveCycle.addListener((obs, old, newVal) -> selectDriveCycle(primaryStage, driveCycleCombo, accelSpinner, old, newVal));
+        TextField physicsRateField = createNumericField(sim.physicsRate, 60, 10000);
+        physicsRateField.setPrefWidth(150);
+        TextField displayRateField = createNumericField(sim.displayRate, 1, 60);
+        displayRateField.setPrefWidth(150);
+        ComboBox<String> exportFormatCombo = new ComboBox<>();
+        for (TelemetryExporter.Format format : TelemetryExporter.Format.values()) {
+            exportFormatCombo.getItems().add(format.label);
+        }
+        exportFormatCombo.setValue(TelemetryExporter.Format.CSV.label);
+        exportFormatCombo.setPrefWidth(150);
         /// Waveform toggle checkboxes
         CheckBox voltageCheck = new CheckBox("Voltage");
         voltageCheck.selectedProperty().bindBidirectional(sim.showVoltage);
@@ -156,6 +229,22 @@ public class Main extends Application {
         tempCheck.selectedProperty().bindBidirectional(sim.showTemp);
         VBox waveformBox = new VBox(8, voltageCheck, currentCheck, speedCheck, tempCheck);
         waveformBox.setAlignment(Pos.CENTER_LEFT);
+        CheckBox performanceCheck = new CheckBox("Overlay");
+        performanceCheck.selectedProperty().bindBidirectional(sim.showPerformance);
+        CheckBox streamCheck = new CheckBox("Port " + TelemetryServer.DEFAULT_PORT);
+        streamCheck.setTooltip(new Tooltip("Stream every physics step to local TCP subscribers"));
+        streamCheck.setOnAction(e -> toggleStreaming(streamCheck));
+        CheckBox sessionCheck = new CheckBox("Record inputs");
+        sessionCheck.setTooltip(new Tooltip("Log every input change and step for an exact replay with SessionReplay"));
+        sessionCheck.setOnAction(e -> toggleSessionLog(sessionCheck));
+        TextField fleetSizeField = createNumericField(sim.fleetSize, 0, 20000);
+        fleetSizeField.setPrefWidth(150);
+        fleetSizeField.setTooltip(new Tooltip("Vehicles drawn around the current parameters, stepped at "
+                + (int) Fleet.DEFAULT_RATE + " Hz along the drive cycle (NEDC when driving manually); 0 for none"));
+        Spinner<Integer> inspectSpinner = new Spinner<>(0, 0, 0);
+        inspectSpinner.setPrefWidth(150);
+        inspectSpinner.setTooltip(new Tooltip("0 shows your own vehicle, 1 to N a vehicle of the fleet"));
+        linkEngineInputs();
         addControl(controls, 0, "Battery Voltage (V):", voltageField);
         addControl(controls, 1, "Battery Capacity (kWh):", capacityField);
         addControl(controls, 2, "Motor Power (kW):", powerField);
@@ -166,11 +255,23 @@ public class Main extends Application {
         addControl(controls, 7, "Rolling Resistance:", rollingField);
         addControl(controls, 8, "Gear Ratio:", gearRatioField);
         addControl(controls, 9, "Thermal Mass (J/°C):", thermalMassField);
-        addControl(controls, 10, "Regen Braking:", regenCheck);
-        addControl(controls, 11, "Regen Efficiency (%):", regenSlider);
-        addControl(controls, 12, "Drive Mode:", driveModeCombo);
-        addControl(controls, 13, "Acceleration (m/s²):", accelSpinner);
-        addControl(controls, 14, "Show Waveforms:", waveformBox);
+        addControl(controls, 10, "Ambient Temp (°C):", ambientField);
+        addControl(controls, 11, "Parallel Cells:", cellsField);
+        addControl(controls, 12, "Cell Spread (%):", cellSpreadField);
+        addControl(controls, 13, "Regen Braking:", regenCheck);
+        addControl(controls, 14, "Regen Efficiency (%):", regenSlider);
+        addControl(controls, 15, "Drive Mode:", driveModeCombo);
+        addControl(controls, 16, "Acceleration (m/s²):", accelSpinner);
+        addControl(controls, 17, "Drive Cycle:", driveCycleCombo);
+        addControl(controls, 18, "Physics Rate (Hz):", physicsRateField);
+        addControl(controls, 19, "Display Rate (Hz):", displayRateField);
+        addControl(controls, 20, "Show Waveforms:", waveformBox);
+        addControl(controls, 21, "Export Format:", exportFormatCombo);
+        addControl(controls, 22, "Performance:", performanceCheck);
+        addControl(controls, 23, "Telemetry Stream:", streamCheck);
+        addControl(controls, 24, "Session Log:", sessionCheck);
+        addControl(controls, 25, "Fleet Size:", fleetSizeField);
+        addControl(controls, 26, "Inspect Vehicle:", inspectSpinner);
         ScrollPane controlsScroll = new ScrollPane(controls);
         controlsScroll.setFitToWidth(true);
         controlsScroll.setFitToHeight(true);
@@ -188,61 +289,152 @@ public class Main extends Application {
         resetButton.setPrefWidth(80);
         Button exportButton = new Button("Export Data");
         exportButton.setPrefWidth(80);
+        ToggleButton recordButton = new ToggleButton("Record");
+        recordButton.setPrefWidth(80);
         stopButton.setDisable(true);
         resetButton.setDisable(true);
         pauseButton.setDisable(true);
-        buttonBox.getChildren().addAll(startButton, pauseButton, stopButton, resetButton, exportButton);
+        buttonBox.getChildren().addAll(startButton, pauseButton, stopButton, resetButton, exportButton, recordButton);
+        HBox checkpointBox = new HBox(8);
+        checkpointBox.setAlignment(Pos.CENTER);
+        Button checkpointButton = new Button("Checkpoint");
+        checkpointButton.setTooltip(new Tooltip("Save the current state and history to restore or fork from"));
+        Button restoreButton = new Button("Restore");
+        restoreButton.setTooltip(new Tooltip("Return to the checkpoint under the current controls"));
+        Button whatIfButton = new Button("What-If");
+        whatIfButton.setTooltip(new Tooltip("Run every drive mode with regen on and off from the checkpoint"));
+        restoreButton.setDisable(true);
+        whatIfButton.setDisable(true);
+        checkpointBox.getChildren().addAll(checkpointButton, restoreButton, whatIfButton);
+        /// Export progress, shown while an export runs
+        ProgressBar exportProgress = new ProgressBar(0);
+        exportProgress.setPrefWidth(300);
+        Button cancelExportButton = new Button("Cancel");
+        HBox exportBox = new HBox(8, exportProgress, cancelExportButton);
+        exportBox.setAlignment(Pos.CENTER);
+        exportBox.setVisible(false);
+        exportBox.managedProperty().bind(exportBox.visibleProperty());
         /// Status
         GridPane status = new GridPane();
         status.setHgap(10);
         status.setVgap(8);
         status.setPadding(new Insets(8));
         status.setStyle("-fx-border-color: gray; -fx-border-width: 1;");
-        Label speedLabel = createStatusLabel(sim.vehicleSpeed, " km/h");
-        Label socLabel = createStatusLabel(sim.soc, " %");
-        Label distanceLabel = createStatusLabel(sim.distance, " km");
-        Label energyLabel = createStatusLabel(sim.energyConsumed, " kWh");
-        Label torqueLabel = createStatusLabel(sim.motorTorque, " Nm");
-        Label rpmLabel = createStatusLabel(sim.motorRpm, " RPM");
-        Label tempLabel = createStatusLabel(sim.batteryTemp, " °C");
-        Label efficiencyLabel = createStatusLabel(sim.energyEfficiency, " Wh/km");
-        addStatus(status, 0, "Speed:", speedLabel);
-        addStatus(status, 1, "State of Charge:", socLabel);
-        addStatus(status, 2, "Distance:", distanceLabel);
-        addStatus(status, 3, "Energy Consumed:", energyLabel);
-        addStatus(status, 4, "Motor Torque:", torqueLabel);
-        addStatus(status, 5, "Motor RPM:", rpmLabel);
-        addStatus(status, 6, "Battery Temp:", tempLabel);
-        addStatus(status, 7, "Efficiency:", efficiencyLabel);
-        /// Canvas
-        Canvas canvas = new Canvas(450, 790);
-        drawWaveforms(canvas.getGraphicsContext2D(), canvas.getWidth(), canvas.getHeight());
+        String[] statusNames = {"Speed:", "State of Charge:", "Distance:", "Energy Consumed:", "Motor Torque:",
+                "Motor RPM:", "Battery Temp:", "Efficiency:", "Cell Temp Min:", "Cell Temp Max:", "SoC Spread:"};
+        for (int row = 0; row < statusLabels.length; row++) {
+            addStatus(status, row, statusNames[row], statusLabels[row].label);
+        }
+        rangeLabel.show(Double.NaN);
+        addStatus(status, statusLabels.length, "Estimated Range:", rangeLabel.label);
+        fleetLabel.setWrapText(true);
+        fleetLabel.setMaxWidth(320);
+        addStatus(status, statusLabels.length + 1, "Fleet:", fleetLabel);
+        /// Waveforms
+        WaveformPanel waveforms = new WaveformPanel(450, 790, history, SAMPLE_RATE);
+        sim.showVoltage.addListener((obs, old, newVal) -> updateWaveformVisibility(waveforms));
+        sim.showCurrent.addListener((obs, old, newVal) -> updateWaveformVisibility(waveforms));
+        sim.showSpeed.addListener((obs, old, newVal) -> updateWaveformVisibility(waveforms));
+        sim.showTemp.addListener((obs, old, newVal) -> updateWaveformVisibility(waveforms));
+        waveforms.redrawAll();
+        /// Performance overlay, drawn over the bottom of the waveforms
+        performanceOverlay.setStyle("-fx-font-family: monospace; -fx-font-size: 11px; -fx-text-fill: white; "
+                + "-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 4;");
+        performanceOverlay.setMouseTransparent(true);
+        performanceOverlay.visibleProperty().bind(sim.showPerformance);
+        StackPane waveformStack = new StackPane(waveforms, performanceOverlay);
+        StackPane.setAlignment(performanceOverlay, Pos.BOTTOM_LEFT);
         /// Button Actions
         startButton.setOnAction(e -> startSimulation(startButton, pauseButton, stopButton, resetButton, accelSpinner));
         pauseButton.setOnAction(e -> pauseSimulation(pauseButton));
         stopButton.setOnAction(e -> stopSimulation(startButton, pauseButton, stopButton, resetButton, accelSpinner));
-        resetButton.setOnAction(e -> resetSimulation(canvas, speedLabel, socLabel, distanceLabel, energyLabel, torqueLabel, rpmLabel, tempLabel, efficiencyLabel));
-        exportButton.setOnAction(e -> exportData());
+        resetButton.setOnAction(e -> resetSimulation(waveforms));
+        exportButton.setOnAction(e -> exportData(TelemetryExporter.Format.ofLabel(exportFormatCombo.getValue()),
+                exportButton, exportBox, exportProgress, cancelExportButton));
+        recordButton.setOnAction(e -> toggleRecording(recordButton));
+        checkpointButton.setOnAction(e -> takeCheckpoint(waveforms, restoreButton, whatIfButton));
+        restoreButton.setOnAction(e -> restoreCheckpoint(waveforms));
+        whatIfButton.setOnAction(e -> runWhatIf(whatIfButton));
+        sim.fleetSize.addListener((obs, old, newVal) -> buildFleet(newVal.intValue(), inspectSpinner, waveforms));
+        inspectSpinner.valueProperty().addListener((obs, old, newVal) -> inspectVehicle(newVal, waveforms));
         /// Layout
         Label titleLabel = new Label("EV Powertrain Simulation");
         titleLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
-        centerContent.getChildren().addAll(titleLabel, controlsScroll, buttonBox, status);
+        centerContent.getChildren().addAll(titleLabel, controlsScroll, buttonBox, checkpointBox, exportBox, status);
         ScrollPane centerScroll = new ScrollPane(centerContent);
         centerScroll.setFitToWidth(true);
         centerScroll.setFitToHeight(true);
         root.setCenter(centerScroll);
-        root.setRight(canvas);
+        root.setRight(waveformStack);
         Scene scene = new Scene(root, 900, 800);
         primaryStage.setTitle("EV Powertrain Simulation");
         primaryStage.setScene(scene);
         primaryStage.setOnCloseRequest(e -> {
-            isSimulationRunning.set(false);
             if (simulationTimer != null) simulationTimer.stop();
+            try {
+                simulation.shutdown(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            monitor.unregister();
+            stopStreaming();
+            stopRecording();
+            stopSessionLog();
+            exportExecutor.shutdownNow();
+            whatIfExecutor.shutdownNow();
+            rangePredictor.close();
             Platform.exit();
         });
         primaryStage.setResizable(false);
         primaryStage.show();
-        startSimulationLoop(canvas);
+        stepLoop.addObserver(rangePredictor);
+        simulation = SimulationThread.launch(stepLoop, SAMPLE_RATE, monitor);
+        monitor.attach(simulation, Thread.currentThread());
+        monitor.register();
+        startSimulationLoop(waveforms);
+    }
+
+    /// Switches the acceleration input between the spinner and a drive cycle played against simulated time
+    private void selectDriveCycle(Stage stage, ComboBox<String> driveCycleCombo, Spinner<Double> accelSpinner,
+                                  String previous, String selected) {
+        if (selected == null) return;
+        if (selected.equals(LOAD_CYCLE)) {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Load Drive Cycle (time s, speed km/h)");
+            File file = chooser.showOpenDialog(stage);
+            DriveCycle cycle = null;
+            if (file != null) {
+                try {
+                    cycle = DriveCycle.load(file.toPath());
+                } catch (IOException | IllegalArgumentException e) {
+                    showAlert(Alert.AlertType.ERROR, "Drive Cycle", "Error loading " + file + ": " + e.getMessage());
+                }
+            }
+            String name = cycle != null ? cycle.name : previous;
+            if (cycle != null) {
+                driveCycles.put(name, cycle);
+                if (!driveCycleCombo.getItems().contains(name)) {
+                    driveCycleCombo.getItems().add(driveCycleCombo.getItems().size() - 1, name);
+                }
+            }
+            Platform.runLater(() -> sim.driveCycle.set(name));
+            return;
+        }
+        if (selected.equals(MANUAL_DRIVING)) {
+            double acceleration = sim.acceleration.get();
+            simulation.execute(() -> {
+                stepLoop.setDriver(null);
+                if (session != null) session.cycle(null);
+                applyInput(SessionFile.ACCELERATION, Double.toString(acceleration));
+            });
+        } else {
+            DriveCycle cycle = driveCycles.computeIfAbsent(selected, DriveCycle::builtIn);
+            simulation.execute(() -> {
+                stepLoop.setDriver(new DriveCycleDriver(cycle));
+                if (session != null) session.cycle(cycle);
+            });
+        }
+        accelSpinner.setDisable(simulation.state() == SimulationThread.State.STOPPED || !selected.equals(MANUAL_DRIVING));
     }
 
     private TextField createNumericField(DoubleProperty property, double min, double max) {
@@ -268,10 +460,81 @@ public class Main extends Application {
         return field;
     }
 
-    private Label createStatusLabel(DoubleProperty property, String unit) {
-        Label label = new Label(DF.format(property.get()) + unit);
-        property.addListener((obs, old, newVal) -> label.setText(DF.format(newVal) + unit));
-        return label;
+    /// The engine only sees primitives: every bound property writes through to it when it changes, as a
+    /// command run on the simulation thread. Inputs go by their session log key, so the log records
+    /// exactly the text the engine parsed.
+    private void linkEngineInputs() {
+        linkInput(sim.batteryVoltage, "batteryVoltage");
+        linkInput(sim.batteryCapacity, "batteryCapacity");
+        linkInput(sim.thermalMass, "thermalMass");
+        linkInput(sim.ambientTemp, "ambientTemp");
+        linkCount(sim.cellsParallel, "cellsParallel");
+        linkInput(sim.cellSpread, "cellSpread");
+        linkInput(sim.motorPower, "motorPower");
+        linkInput(sim.gearRatio, "gearRatio");
+        linkInput(sim.vehicleMass, "vehicleMass");
+        linkInput(sim.dragCoefficient, "dragCoefficient");
+        linkInput(sim.frontalArea, "frontalArea");
+        linkInput(sim.airDensity, "airDensity");
+        linkInput(sim.rollingResistance, "rollingResistance");
+        linkInput(sim.regenEfficiency, "regenEfficiency");
+        linkInput(sim.acceleration, SessionFile.ACCELERATION);
+        /// The physics rate reaches the log as the dt of the steps that follow
+        stepLoop.setRate(sim.physicsRate.get());
+        sim.physicsRate.addListener((obs, old, newVal) -> {
+            double rate = newVal.doubleValue();
+            simulation.execute(() -> stepLoop.setRate(rate));
+        });
+        params.regenBraking = sim.regenBraking.get();
+        sim.regenBraking.addListener((obs, old, newVal) ->
+                simulation.execute(() -> applyInput("regenBraking", Boolean.toString(newVal))));
+        params.setDriveMode(sim.driveMode.get());
+        sim.driveMode.addListener((obs, old, newVal) -> {
+            if (newVal != null) simulation.execute(() -> applyInput("driveMode", newVal));
+        });
+    }
+
+    private void linkInput(DoubleProperty property, String key) {
+        SessionFile.apply(engine, key, Double.toString(property.get()));
+        property.addListener((obs, old, newVal) -> {
+            String value = Double.toString(newVal.doubleValue());
+            simulation.execute(() -> applyInput(key, value));
+        });
+    }
+
+    /// As linkInput for a whole-number input; the field also accepts fractions, which are cut off here
+    private void linkCount(DoubleProperty property, String key) {
+        SessionFile.apply(engine, key, Integer.toString(property.intValue()));
+        property.addListener((obs, old, newVal) -> {
+            String value = Integer.toString(newVal.intValue());
+            simulation.execute(() -> applyInput(key, value));
+        });
+    }
+
+    /// Simulation thread: applies one input and appends it to the session log, if one is open
+    private void applyInput(String key, String value) {
+        SessionFile.apply(engine, key, value);
+        if (session != null) session.set(key, value);
+    }
+
+    /// Shows the latest published state in the status labels, at most displayRate times a second
+    private void refreshStatus(long now, boolean force) {
+        if (!force && now - lastStatusUpdate < 1e9 / sim.displayRate.get()) return;
+        lastStatusUpdate = now;
+        rangeLabel.show(inspected > 0 ? Double.NaN : rangePredictor.range());
+        if (fleet != null && fleet.stats.read(fleetStats)) {
+            String text = String.format(Locale.ROOT, "%d vehicles, SoC %.1f %% (%.1f-%.1f)%n"
+                            + "%.1f km/h mean, %.0f Wh/km, max %.1f °C, step %.2f ms",
+                    (int) fleetStats[Fleet.STAT_VEHICLES], fleetStats[Fleet.STAT_MEAN_SOC],
+                    fleetStats[Fleet.STAT_MIN_SOC], fleetStats[Fleet.STAT_MAX_SOC], fleetStats[Fleet.STAT_MEAN_SPEED],
+                    fleetStats[Fleet.STAT_WH_PER_KM], fleetStats[Fleet.STAT_MAX_TEMP],
+                    fleetStats[Fleet.STAT_STEP_MICROS] / 1000);
+            if (!text.equals(fleetLabel.getText())) fleetLabel.setText(text);
+        }
+        if (!simulation.latest.read(shown) && !force) return;
+        for (StatusLabel status : statusLabels) {
+            status.show(shown[status.channel]);
+        }
     }
 
     private void addControl(GridPane grid, int row, String label, Node control) {
@@ -284,122 +547,27 @@ public class Main extends Application {
         grid.add(value, 1, row);
     }
 
-    private void drawWaveforms(GraphicsContext gc, double width, double height) {
-        gc.setFill(Color.BLACK);
-        gc.fillRect(0, 0, width, height);
-        gc.setStroke(Color.WHITE);
-        gc.setLineWidth(0.5);
-        int gridSize = 10;
-        double squareSize = Math.min(width, height) / 10;
-        for (int i = 0; i <= 25; i++) {
-            double pos = i * squareSize;
-            gc.strokeLine(0, pos, width, pos);
-            gc.strokeLine(pos, 0, pos, height);
-        }
-        double maxVoltage = Arrays.stream(voltageWave).max().orElse(sim.batteryVoltage.get()) * 1.1;
-        double maxCurrent = Arrays.stream(currentWave).max().orElse((sim.motorPower.get() * 1000 / sim.batteryVoltage.get())) * 1.1;
-        double maxSpeed = Arrays.stream(speedWave).max().orElse(180.0) * 1.1;
-        double maxTemp = Arrays.stream(tempWave).max().orElse(70.0) * 1.1;
-        /// Voltage (red)
-        if (sim.showVoltage.get()) {
-            gc.setStroke(Color.RED);
-            gc.setLineWidth(2);
-            gc.beginPath();
-            for (int i = 0; i < WAVE_POINTS; i++) {
-                int idx = (waveIndex + i) % WAVE_POINTS;
-                double x = (double) i / WAVE_POINTS * width;
-                double y = (height / 4) - (voltageWave[idx] / maxVoltage * (height / 4) * 0.8);
-                if (i == 0) gc.moveTo(x, y);
-                else gc.lineTo(x, y);
-            }
-            gc.stroke();
-            gc.setFill(Color.RED);
-            gc.fillText("Voltage (V)", 10, 20);
-        }
-        /// Current (green)
-        if (sim.showCurrent.get()) {
-            gc.setStroke(Color.LIGHTGREEN);
-            gc.beginPath();
-            for (int i = 0; i < WAVE_POINTS; i++) {
-                int idx = (waveIndex + i) % WAVE_POINTS;
-                double x = (double) i / WAVE_POINTS * width;
-                double y = (height / 2) - (currentWave[idx] / maxCurrent * (height / 4) * 0.8);
-                if (i == 0) gc.moveTo(x, y);
-                else gc.lineTo(x, y);
-            }
-            gc.stroke();
-            gc.setFill(Color.LIGHTGREEN);
-            gc.fillText("Current (A)", 10, height / 4 + 20);
-        }
-        /// Speed (blue)
-        if (sim.showSpeed.get()) {
-            gc.setStroke(Color.LIGHTSKYBLUE);
-            gc.beginPath();
-            for (int i = 0; i < WAVE_POINTS; i++) {
-                int idx = (waveIndex + i) % WAVE_POINTS;
-                double x = (double) i / WAVE_POINTS * width;
-                double y = (3 * height / 4) - (speedWave[idx] / maxSpeed * (height / 4) * 0.8);
-                if (i == 0) gc.moveTo(x, y);
-                else gc.lineTo(x, y);
-            }
-            gc.stroke();
-            gc.setFill(Color.LIGHTSKYBLUE);
-            gc.fillText("Speed (km/h)", 10, height / 2 + 20);
-        }
-        /// Temperature (yellow)
-        if (sim.showTemp.get()) {
-            gc.setStroke(Color.YELLOW);
-            gc.beginPath();
-            for (int i = 0; i < WAVE_POINTS; i++) {
-                int idx = (waveIndex + i) % WAVE_POINTS;
-                double x = (double) i / WAVE_POINTS * width;
-                double y = height - ((tempWave[idx] - 10) / maxTemp * (height / 4) * 0.8);
-                if (i == 0) gc.moveTo(x, y);
-                else gc.lineTo(x, y);
-            }
-            gc.stroke();
-            gc.setFill(Color.YELLOW);
-            gc.fillText("Temp (°C)", 10, 3 * height / 4 + 20);
-        }
-    }
-
-    private void updateWaveforms(double dt) {
-        /// Voltage based on SoC
-        double socFactor = sim.soc.get() < 20 ? 0.95 : sim.soc.get() > 80 ? 1.05 : 1.0;
-        voltageWave[waveIndex] = sim.batteryVoltage.get() * socFactor;
-        /// Current based on power consumption
-        double motorEfficiency = 0.85 * (1 - 0.1 * Math.abs(sim.motorRpm.get() / 9000));
-        double powerUse = sim.motorPower.get() * (0.5 + 0.5 * Math.abs(sim.acceleration.get())) / motorEfficiency;
-        currentWave[waveIndex] = powerUse * 1000 / sim.batteryVoltage.get();
-        speedWave[waveIndex] = sim.vehicleSpeed.get();
-        tempWave[waveIndex] = sim.batteryTemp.get();
-        socWave[waveIndex] = sim.soc.get();
-        torqueWave[waveIndex] = sim.motorTorque.get();
-        efficiencyWave[waveIndex] = sim.energyEfficiency.get();
-        waveIndex = (waveIndex + 1) % WAVE_POINTS;
+    private void updateWaveformVisibility(WaveformPanel waveforms) {
+        waveforms.setChannelsVisible(sim.showVoltage.get(), sim.showCurrent.get(), sim.showSpeed.get(), sim.showTemp.get());
+        waveforms.update();
     }
 
     private void startSimulation(Button startButton, Button pauseButton, Button stopButton, Button resetButton, Spinner<Double> accelSpinner) {
-        sim.isRunning.set(true);
-        sim.isPaused.set(false);
-        isSimulationRunning.set(true);
+        simulation.start();
         startButton.setDisable(true);
         pauseButton.setDisable(false);
         stopButton.setDisable(false);
         resetButton.setDisable(false);
-        accelSpinner.setDisable(false);
-        lastTime = System.nanoTime();
+        accelSpinner.setDisable(!MANUAL_DRIVING.equals(sim.driveCycle.get()));
     }
 
     private void pauseSimulation(Button pauseButton) {
-        sim.isPaused.set(!sim.isPaused.get());
-        pauseButton.setText(sim.isPaused.get() ? "Resume" : "Pause");
+        if (!simulation.pause()) simulation.resume();
+        pauseButton.setText(simulation.state() == SimulationThread.State.PAUSED ? "Resume" : "Pause");
     }
 
     private void stopSimulation(Button startButton, Button pauseButton, Button stopButton, Button resetButton, Spinner<Double> accelSpinner) {
-        sim.isRunning.set(false);
-        sim.isPaused.set(false);
-        isSimulationRunning.set(false);
+        simulation.stop();
         startButton.setDisable(false);
         pauseButton.setDisable(true);
         pauseButton.setText("Pause");
@@ -408,56 +576,294 @@ public class Main extends Application {
         accelSpinner.setDisable(true);
     }
 
-    private void resetSimulation(Canvas canvas, Label... labels) {
-        sim.vehicleSpeed.set(0);
-        sim.motorRpm.set(0);
-        sim.motorTorque.set(0);
-        sim.distance.set(0);
-        sim.energyConsumed.set(0);
-        sim.soc.set(100);
-        sim.batteryTemp.set(25);
-        sim.energyEfficiency.set(0);
-        lastTime = 0;
-        waveIndex = 0;
-        for (int i = 0; i < WAVE_POINTS; i++) {
-            voltageWave[i] = sim.batteryVoltage.get();
-            currentWave[i] = 0;
-            speedWave[i] = 0;
-            tempWave[i] = sim.batteryTemp.get();
-            socWave[i] = sim.soc.get();
-            torqueWave[i] = 0;
-            efficiencyWave[i] = 0;
+    /// Resets the engine on the simulation thread and waits for it, then drops the samples taken before
+    private void resetSimulation(WaveformPanel waveforms) {
+        Fleet.Stepper stepper = fleet;
+        CompletableFuture.runAsync(() -> {
+            engine.reset();
+            if (stepper != null) stepper.reset();
+            stepLoop.reset();
+            rangePredictor.reset(engine);
+            if (session != null) session.reset();
+            double[] sample = new double[Channels.COUNT];
+            stepLoop.interpolate(sample); // the engine, or the fleet vehicle shown
+            simulation.latest.publish(sample);
+        }, simulation).join();
+        simulation.samples.clear();
+        history.reset(new Trace());
+        waveforms.redrawAll();
+        refreshStatus(System.nanoTime(), true);
+    }
+
+    /// Replaces the fleet with one of size vehicles drawn around the current parameters, on the drive
+    /// cycle in use; 0 removes it. The display goes back to the own vehicle.
+    private void buildFleet(int size, Spinner<Integer> inspectSpinner, WaveformPanel waveforms) {
+        Fleet.Stepper previous = fleet;
+        fleet = CompletableFuture.supplyAsync(() -> {
+            if (previous != null) stepLoop.removeObserver(previous);
+            if (size <= 0) return null;
+            DriveCycle cycle = stepLoop.driver() instanceof DriveCycleDriver driver
+                    ? driver.cycle : DriveCycle.builtIn("NEDC");
+            Fleet.Stepper stepper = new Fleet.Stepper(Fleet.around(params, size, cycle, FLEET_SEED), Fleet.DEFAULT_RATE);
+            stepLoop.addObserver(stepper);
+            return stepper;
+        }, simulation).join();
+        if (fleet == null) fleetLabel.setText("–");
+        inspected = -1; // forces the switch back even when the own vehicle was already shown
+        inspectSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, Math.max(size, 0), 0));
+        inspectVehicle(0, waveforms);
+    }
+
+    /// Shows fleet vehicle number in the waveforms and status readouts, or the own vehicle for 0. The
+    /// waveforms and the drawn history start over with the vehicle shown.
+    private void inspectVehicle(Integer number, WaveformPanel waveforms) {
+        int vehicle = number == null || fleet == null ? 0 : Math.min(number, fleet.fleet.size);
+        if (vehicle == inspected) return;
+        inspected = vehicle;
+        Fleet.Stepper stepper = fleet;
+        CompletableFuture.runAsync(() -> {
+            stepLoop.setSampleSource(vehicle > 0 ? out -> stepper.fleet.sample(vehicle - 1, out) : null);
+            stepLoop.reset();
+            double[] sample = new double[Channels.COUNT];
+            stepLoop.interpolate(sample);
+            simulation.latest.publish(sample);
+        }, simulation).join();
+        simulation.samples.clear();
+        history.reset(new Trace());
+        waveforms.redrawAll();
+        refreshStatus(System.nanoTime(), true);
+    }
+
+    /// Captures the engine, parameters, driver and the history drawn so far between two ticks
+    private void takeCheckpoint(WaveformPanel waveforms, Button restoreButton, Button whatIfButton) {
+        drawSamples(waveforms);
+        Trace drawn = history.trace().fork();
+        checkpoint = CompletableFuture.supplyAsync(() -> Checkpoint.capture(engine, stepLoop.driver(),
+                new EulerIntegrator(stepLoop.stepSize()), drawn), simulation).join();
+        restoreButton.setDisable(false);
+        whatIfButton.setDisable(false);
+    }
+
+    /// Puts the engine back into the checkpoint's state and the waveforms back to the history drawn up
+    /// to it. Parameters, drive cycle and acceleration stay as the controls set them now, and the
+    /// checkpoint stays available for further restores.
+    private void restoreCheckpoint(WaveformPanel waveforms) {
+        Checkpoint from = checkpoint;
+        String acceleration = Double.toString(sim.acceleration.get());
+        CompletableFuture.runAsync(() -> {
+            from.restoreInto(engine);
+            stepLoop.reset();
+            rangePredictor.reset(engine);
+            if (session != null) session.restore(engine);
+            applyInput(SessionFile.ACCELERATION, acceleration);
+            double[] sample = new double[Channels.COUNT];
+            stepLoop.interpolate(sample);
+            simulation.latest.publish(sample);
+        }, simulation).join();
+        simulation.samples.clear();
+        boolean own = inspected == 0; // the checkpoint's history is the own vehicle's
+        history.reset(own ? from.history.fork() : new Trace());
+        waveforms.redrawAll();
+        refreshStatus(System.nanoTime(), true);
+    }
+
+    /// Forks one branch per drive mode with regen on and off from the checkpoint and runs them in the
+    /// background, leaving a core for the simulation and the display
+    private void runWhatIf(Button whatIfButton) {
+        Checkpoint from = checkpoint;
+        Map<String, Map<String, String>> branches = new LinkedHashMap<>();
+        for (String mode : SimulationParameters.DRIVE_MODES.keySet()) {
+            for (boolean regen : new boolean[]{true, false}) {
+                branches.put(mode + (regen ? ", regen on" : ", regen off"),
+                        Map.of("driveMode", mode, "regenBraking", Boolean.toString(regen)));
+            }
+        }
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        Task<List<WhatIf.Outcome>> task = new Task<>() {
+            @Override
+            protected List<WhatIf.Outcome> call() {
+                return WhatIf.run(from, branches, WHAT_IF_DURATION, 1 / SAMPLE_RATE, threads);
+            }
+        };
+        whatIfButton.setDisable(true);
+        task.setOnSucceeded(e -> {
+            whatIfButton.setDisable(false);
+            StringBuilder text = new StringBuilder();
+            for (WhatIf.Outcome outcome : task.getValue()) {
+                text.append(outcome.label).append(": ").append(DF.format(outcome.branchDistance)).append(" km, ")
+                        .append(DF.format(outcome.branchEnergy * 1000)).append(" Wh, SoC ")
+                        .append(DF.format(outcome.summary.soc)).append(" %, peak ")
+                        .append(DF.format(outcome.summary.peakBatteryTemp)).append(" °C\n");
+            }
+            showAlert(Alert.AlertType.INFORMATION, "What-If: next " + DF.format(WHAT_IF_DURATION / 60) + " min",
+                    text.toString());
+        });
+        task.setOnFailed(e -> {
+            whatIfButton.setDisable(false);
+            showAlert(Alert.AlertType.ERROR, "What-If Failed", "Error running branches: " + task.getException().getMessage());
+        });
+        whatIfExecutor.execute(task);
+    }
+
+    /// Exports the last saved recording, or every sample drawn since the last reset if nothing was
+    /// recorded, on a background thread with progress and cancellation
+    private void exportData(TelemetryExporter.Format format, Button exportButton, HBox exportBox,
+                            ProgressBar exportProgress, Button cancelExportButton) {
+        String filename = "ev_simulation_" + SDF.format(new Date()) + format.extension;
+        Path target = Path.of(filename);
+        Path recording = lastRecording;
+        ColumnSource snapshot = recording == null ? history.trace().fork() : null;
+        String parameterLine = CompletableFuture.supplyAsync(() -> TelemetryExporter.parameterLine(params), simulation).join();
+        Task<Long> task = new Task<>() {
+            @Override
+            protected Long call() throws IOException {
+                if (recording == null) {
+                    return TelemetryExporter.export(snapshot, parameterLine, format, target,
+                            rows -> updateProgress(rows, snapshot.rows()), this::isCancelled);
+                }
+                try (TelemetryReader reader = TelemetryReader.open(recording)) {
+                    return TelemetryExporter.export(reader, parameterLine, format, target,
+                            rows -> updateProgress(rows, reader.rows()), this::isCancelled);
+                }
+            }
+        };
+        exportProgress.progressProperty().bind(task.progressProperty());
+        cancelExportButton.setOnAction(e -> task.cancel());
+        exportButton.setDisable(true);
+        exportBox.setVisible(true);
+        task.setOnSucceeded(e -> {
+            finishExport(exportButton, exportBox, exportProgress);
+            showAlert(Alert.AlertType.INFORMATION, "Export Successful",
+                    task.getValue() + " rows exported to " + filename);
+        });
+        task.setOnCancelled(e -> finishExport(exportButton, exportBox, exportProgress));
+        task.setOnFailed(e -> {
+            finishExport(exportButton, exportBox, exportProgress);
+            showAlert(Alert.AlertType.ERROR, "Export Failed", "Error exporting data: " + task.getException().getMessage());
+        });
+        exportExecutor.execute(task);
+    }
+
+    private void finishExport(Button exportButton, HBox exportBox, ProgressBar exportProgress) {
+        exportProgress.progressProperty().unbind();
+        exportProgress.setProgress(0);
+        exportBox.setVisible(false);
+        exportButton.setDisable(false);
+    }
+
+    /// Records every physics step of every channel until toggled off
+    private void toggleRecording(ToggleButton recordButton) {
+        if (recordButton.isSelected()) {
+            String filename = "ev_telemetry_" + SDF.format(new Date()) + ".evt";
+            try {
+                recorder = TelemetryRecorder.create(Path.of(filename));
+                stepLoop.addObserver(recorder);
+            } catch (IOException e) {
+                recordButton.setSelected(false);
+                showAlert(Alert.AlertType.ERROR, "Recording Failed", "Error creating " + filename + ": " + e.getMessage());
+            }
+        } else {
+            TelemetryRecorder finished = recorder;
+            if (stopRecording()) {
+                lastRecording = finished.path();
+                showAlert(Alert.AlertType.INFORMATION, "Recording Saved",
+                        finished.rows() + " steps recorded to " + finished.path());
+            }
         }
-        drawWaveforms(canvas.getGraphicsContext2D(), canvas.getWidth(), canvas.getHeight());
-        for (Label label : labels) {
-            String unit = label.getText().substring(label.getText().indexOf(" "));
-            label.setText(DF.format(0) + unit);
+    }
+
+    /// Detaches the recorder between two ticks of the simulation thread, so no step is still writing to it
+    /// when it is closed
+    private boolean stopRecording() {
+        if (recorder == null) return false;
+        TelemetryRecorder detached = recorder;
+        CompletableFuture.runAsync(() -> stepLoop.removeObserver(detached), simulation).join();
+        try {
+            recorder.close();
+            return true;
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Recording Failed", "Error closing " + recorder.path() + ": " + e.getMessage());
+            return false;
+        } finally {
+            recorder = null;
         }
     }
 
-    private void exportData() {
-        String timestamp = SDF.format(new Date());
-        String filename = "ev_simulation_" + timestamp + ".csv";
-        try (FileWriter writer = new FileWriter(filename)) {
-            /// header with simulation parameters
-            writer.write(String.format("Simulation Parameters: Voltage=%.2f V, Capacity=%.2f kWh, Motor Power=%.2f kW, " +
-                            "Mass=%.2f kg, Drag=%.2f, Frontal Area=%.2f m², Air Density=%.2f kg/m³, " +
-                            "Rolling Resistance=%.2f, Gear Ratio=%.2f, Thermal Mass=%.2f J/°C\n",
-                    sim.batteryVoltage.get(), sim.batteryCapacity.get(), sim.motorPower.get(),
-                    sim.vehicleMass.get(), sim.dragCoefficient.get(), sim.frontalArea.get(),
-                    sim.airDensity.get(), sim.rollingResistance.get(), sim.gearRatio.get(),
-                    sim.thermalMass.get()));
-            /// data header
-            writer.write("Index,Voltage (V),Current (A),Speed (km/h),Temperature (°C),SoC (%),Torque (Nm),Efficiency (Wh/km)\n");
-            for (int i = 0; i < WAVE_POINTS; i++) {
-                int idx = (waveIndex + i) % WAVE_POINTS;
-                writer.write(String.format("%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f\n",
-                        i, voltageWave[idx], currentWave[idx], speedWave[idx], tempWave[idx],
-                        socWave[idx], torqueWave[idx], efficiencyWave[idx]));
+    /// Serves every physics step to local subscribers until toggled off
+    private void toggleStreaming(CheckBox streamCheck) {
+        if (streamCheck.isSelected()) {
+            try {
+                telemetryServer = TelemetryServer.start(TelemetryServer.DEFAULT_PORT, TelemetryServer.Policy.DECIMATE);
+                stepLoop.addObserver(telemetryServer);
+            } catch (IOException e) {
+                streamCheck.setSelected(false);
+                showAlert(Alert.AlertType.ERROR, "Streaming Failed",
+                        "Cannot listen on port " + TelemetryServer.DEFAULT_PORT + ": " + e.getMessage());
             }
-            showAlert(Alert.AlertType.INFORMATION, "Export Successful", "Data exported to " + filename);
+        } else {
+            stopStreaming();
+        }
+    }
+
+    private void stopStreaming() {
+        if (telemetryServer == null) return;
+        TelemetryServer detached = telemetryServer;
+        telemetryServer = null;
+        CompletableFuture.runAsync(() -> stepLoop.removeObserver(detached), simulation).join();
+        try {
+            detached.close();
         } catch (IOException e) {
-            showAlert(Alert.AlertType.ERROR, "Export Failed", "Error exporting data: " + e.getMessage());
+            showAlert(Alert.AlertType.ERROR, "Streaming Failed", "Error closing the telemetry server: " + e.getMessage());
+        }
+    }
+
+    /// Logs the inputs the simulation thread applies from now on, for SessionReplay to re-execute
+    private void toggleSessionLog(CheckBox sessionCheck) {
+        if (sessionCheck.isSelected()) {
+            Path path = Path.of("ev_session_" + SDF.format(new Date()) + ".evs");
+            try {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        session = SessionRecorder.create(path, engine, stepLoop);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    stepLoop.addObserver(session);
+                }, simulation).join();
+            } catch (CompletionException e) {
+                sessionCheck.setSelected(false);
+                showAlert(Alert.AlertType.ERROR, "Session Log Failed",
+                        "Error creating " + path + ": " + e.getCause().getMessage());
+            }
+        } else {
+            SessionRecorder finished = stopSessionLog();
+            if (finished != null) {
+                showAlert(Alert.AlertType.INFORMATION, "Session Log Saved", finished.events()
+                        + " input events logged to " + finished.path() + "; replay with SessionReplay");
+            }
+        }
+    }
+
+    /// Ends the log between two ticks with the engine state a replay must reproduce, then closes it;
+    /// returns the closed recorder, or null when none was open or it failed
+    private SessionRecorder stopSessionLog() {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                SessionRecorder detached = session;
+                if (detached == null) return null;
+                session = null;
+                stepLoop.removeObserver(detached);
+                try (detached) {
+                    detached.finish(engine);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return detached;
+            }, simulation).join();
+        } catch (CompletionException e) {
+            showAlert(Alert.AlertType.ERROR, "Session Log Failed", "Error closing the session log: "
+                    + e.getCause().getMessage());
+            return null;
         }
     }
 
@@ -469,66 +875,68 @@ public class Main extends Application {
         alert.showAndWait();
     }
 
-    private void startSimulationLoop(Canvas canvas) {
+    /// Each pulse draws the samples the simulation thread published since the last one
+    private void startSimulationLoop(WaveformPanel waveforms) {
         simulationTimer = new AnimationTimer() {
-            long lastUpdate = 0;
             @Override
             public void handle(long now) {
-                if (isSimulationRunning.get() && !sim.isPaused.get()) {
-                    double dt = (lastUpdate == 0) ? SIM_UPDATE_MS / 1000.0 : (now - lastUpdate) / 1_000_000_000.0;
-                    lastUpdate = now;
-                    updateSimulation(canvas, Math.min(dt, 0.1));
-                }
+                monitor.recordFrame(now);
+                drawSamples(waveforms);
+                long start = monitor.now();
+                refreshStatus(now, false);
+                monitor.record(monitor.status, start);
+                refreshOverlay(now);
             }
         };
         simulationTimer.start();
     }
 
-    private void updateSimulation(Canvas canvas, double dt) {
-        if (!sim.isRunning.get()) return;
-        double[] modeParams = DRIVE_MODES.get(sim.driveMode.get());
-        double maxAccel = modeParams[0];
-        double powerFactor = modeParams[1];
-        /// Vehicle Dynamics
-        double accel = Math.max(-maxAccel, Math.min(maxAccel, sim.acceleration.get()));
-        double speedMs = sim.vehicleSpeed.get() / 3.6;
-        double force = sim.vehicleMass.get() * accel;
-        double drag = 0.5 * sim.dragCoefficient.get() * sim.frontalArea.get() * sim.airDensity.get() * speedMs * speedMs;
-        double rolling = sim.rollingResistance.get() * sim.vehicleMass.get() * 9.81;
-        double totalForce = force - drag - rolling;
-        speedMs += (totalForce / sim.vehicleMass.get()) * dt;
-        sim.vehicleSpeed.set(Math.max(0, Math.min(180, speedMs * 3.6)));
-        /// Motor
-        sim.motorRpm.set(sim.vehicleSpeed.get() * sim.gearRatio.get() * 60 / (0.377 * 0.4)); // Wheel radius ~0.4m
-        double motorEfficiency = 0.85 * (1 - 0.1 * Math.abs(sim.motorRpm.get() / 9000));
-        sim.motorTorque.set(sim.motorPower.get() * powerFactor * 1000 /
-                (Math.max(0.1, sim.motorRpm.get() / 60 * 2 * Math.PI) * motorEfficiency));
-        sim.distance.set(sim.distance.get() + sim.vehicleSpeed.get() / 3600 * dt);
-        /// Battery and Energy
-        double tempEfficiency = 1.0 - (sim.batteryTemp.get() > 40 ? (sim.batteryTemp.get() - 40) * 0.01 : 0);
-        double powerUse = sim.motorPower.get() * powerFactor * (0.5 + 0.5 * Math.abs(accel)) / (motorEfficiency * tempEfficiency);
-        sim.energyConsumed.set(sim.energyConsumed.get() + powerUse / 3600 * dt);
-        sim.soc.set(100 - (sim.energyConsumed.get() / sim.batteryCapacity.get() * 100));
-        if (sim.soc.get() < 0) sim.soc.set(0);
-        /// Regenerative Braking
-        if (accel < 0 && sim.regenBraking.get() && sim.soc.get() < 95) {
-            double socFactor = sim.soc.get() > 80 ? 0.5 : 1.0;
-            double regenEnergy = sim.regenEfficiency.get() * powerUse * 0.5 * socFactor;
-            sim.energyConsumed.set(sim.energyConsumed.get() - regenEnergy / 3600 * dt);
-            sim.soc.set(Math.min(100, 100 - (sim.energyConsumed.get() / sim.batteryCapacity.get() * 100)));
+    private void drawSamples(WaveformPanel waveforms) {
+        long start = monitor.now();
+        int drained = 0;
+        while (simulation.samples.poll(display)) {
+            history.record(display);
+            drained++;
+        }
+        monitor.record(monitor.drain, start);
+        if (drained == 0) return;
+        start = monitor.now();
+        waveforms.update();
+        monitor.record(monitor.draw, start);
+    }
+
+    /// Once a second while the overlay is shown
+    private void refreshOverlay(long now) {
+        if (!sim.showPerformance.get() || now - lastOverlayUpdate < 1_000_000_000L) return;
+        lastOverlayUpdate = now;
+        performanceOverlay.setText(monitor.overlayText());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--sweep")) {
+            ParameterSweep.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--montecarlo")) {
+            MonteCarlo.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--fleet")) {
+            Fleet.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--whatif")) {
+            WhatIf.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            SessionReplay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
         }
-        /// Battery Temperature
-        double heatInput = (powerUse / sim.motorPower.get()) * 0.1;
-        double cooling = 0.05 * (sim.batteryTemp.get() - 25);
-        sim.batteryTemp.set(sim.batteryTemp.get() + (heatInput - cooling) * dt / sim.thermalMass.get());
-        sim.batteryTemp.set(Math.max(10, Math.min(70, sim.batteryTemp.get())));
-        /// Energy Efficiency
-        sim.energyEfficiency.set(sim.distance.get() > 0 ? (sim.energyConsumed.get() * 1000) / sim.distance.get() : 0);
-        updateWaveforms(dt);
-        drawWaveforms(canvas.getGraphicsContext2D(), canvas.getWidth(), canvas.getHeight());
-    }
-
-    public static void main(String[] args) {
         launch(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,371 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// Range uncertainty by Monte Carlo: draws vehicle and environment parameters from distributions, drives
+/// every draw over the same trip and reports percentiles and histograms of the estimated range, the
+/// consumption and the peak battery temperature.
+/// Usage: MonteCarlo <spec.properties> [--threads N] [--out trips.csv] [--bins N]
+/// The spec uses the parameter file keys. A value of uniform(min,max), normal(mean,sd) or
+/// normal(mean,sd,min,max) (clamped), or triangular(min,mode,max) draws that key for every trip; a plain
+/// value fixes it. Keys that must stay positive, such as vehicleMass and batteryCapacity, only take a
+/// distribution whose lower bound is above zero, so normal needs its clamped form there. Run settings as for ParameterSweep (duration, cycle, dt, acceleration, integrator,
+/// tolerance; the cycle defaults to NEDC, and cycle=none holds acceleration instead), plus trips
+/// (default 10000) and seed (default 1).
+/// Draws come from a SplittableRandom split along a fixed binary tree over the trip indices, so trip i
+/// sees the same numbers for a given seed and trip count whatever the pool size, and the results are
+/// identical on any number of cores.
+public final class MonteCarlo {
+    static final int DEFAULT_TRIPS = 10_000;
+    static final int DEFAULT_BINS = 20;
+    static final double[] PERCENTILES = {5, 10, 25, 50, 75, 90, 95};
+    private static final int LEAF_TRIPS = 16; // trips run in sequence on one split of the generator
+    /// Keys the model divides by or takes roots of, which a distribution must not take to zero or below
+    static final List<String> POSITIVE_KEYS = List.of("batteryVoltage", "batteryCapacity", "thermalMass",
+            "motorPower", "gearRatio", "vehicleMass", "frontalArea", "airDensity");
+
+    final SimulationParameters base;
+    final String[] drawnKeys;
+    final Distribution[] distributions;
+    final int trips;
+    final long seed;
+    final DriveCycle cycle;
+    final double acceleration;
+    final double duration;
+    final double dt;
+    final String integrator;
+    final double tolerance;
+    /// Per trip, in trip order
+    final double[][] draws; // [trip][drawn key]
+    final double[] range; // km on a full battery, NaN when the trip used no charge
+    final double[] whPerKm;
+    final double[] peakTemp; // °C
+
+    private MonteCarlo(SimulationParameters base, List<String> keys, List<Distribution> distributions, int trips,
+                       long seed, DriveCycle cycle, double acceleration, double duration, double dt, String integrator,
+                       double tolerance) {
+        this.base = base;
+        this.drawnKeys = keys.toArray(new String[0]);
+        this.distributions = distributions.toArray(new Distribution[0]);
+        this.trips = trips;
+        this.seed = seed;
+        this.cycle = cycle;
+        this.acceleration = acceleration;
+        this.duration = duration;
+        this.dt = dt;
+        this.integrator = integrator;
+        this.tolerance = tolerance;
+        draws = new double[trips][drawnKeys.length];
+        range = new double[trips];
+        whPerKm = new double[trips];
+        peakTemp = new double[trips];
+        integrator(); // reject unknown names before any trip starts
+    }
+
+    static MonteCarlo parse(Properties spec) throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<Distribution> distributions = new ArrayList<>();
+        SimulationParameters base = parseParameters(spec, keys, distributions);
+        String cycleName = spec.getProperty("cycle", "NEDC").trim();
+        DriveCycle cycle = cycleName.equalsIgnoreCase("none") ? null : DriveCycle.resolve(cycleName);
+        String durationText = spec.getProperty("duration", cycle != null ? "cycle" : "1h").trim();
+        double duration;
+        if (durationText.equalsIgnoreCase("cycle")) {
+            if (cycle == null) throw new IllegalArgumentException("Duration 'cycle' needs a cycle");
+            duration = cycle.duration();
+        } else {
+            duration = BatchRunner.parseDuration(durationText);
+        }
+        int trips = (int) SimulationParameters.number(spec, "trips", DEFAULT_TRIPS);
+        if (trips <= 0) throw new IllegalArgumentException("trips must be positive: " + trips);
+        long seed = Long.parseLong(spec.getProperty("seed", "1").trim());
+        double dt = SimulationParameters.number(spec, "dt", BatchRunner.DEFAULT_DT);
+        double acceleration = SimulationParameters.number(spec, "acceleration", 0);
+        String integrator = spec.getProperty("integrator", "euler").trim();
+        double tolerance = SimulationParameters.number(spec, "tolerance", BatchRunner.DEFAULT_TOLERANCE);
+        return new MonteCarlo(base, keys, distributions, trips, seed, cycle, acceleration, duration, dt, integrator,
+                tolerance);
+    }
+
+    /// Parameters fixed by spec, applied over base; the keys it draws from a distribution are added to
+    /// keys and distributions in KEYS order. A distribution on one of POSITIVE_KEYS must not reach zero,
+    /// so normal needs its clamped form there.
+    static SimulationParameters parseParameters(Properties spec, SimulationParameters base, List<String> keys,
+                                                List<Distribution> distributions) {
+        for (String key : SimulationParameters.KEYS) {
+            String value = spec.getProperty(key);
+            if (value == null) continue;
+            value = value.trim();
+            if (value.endsWith(")")) {
+                if (key.equals("regenBraking") || key.equals("driveMode") || key.equals("efficiencyMap")
+                        || key.equals("cellsParallel")) {
+                    throw new IllegalArgumentException(key + " cannot be drawn from a distribution");
+                }
+                Distribution distribution = Distribution.parse(key, value);
+                if (POSITIVE_KEYS.contains(key) && !(distribution.lowest() > 0)) {
+                    throw new IllegalArgumentException(key + " must stay positive, but " + value + " can draw "
+                            + distribution.lowest() + (distribution.kind.equals("normal")
+                            ? "; use normal(mean,sd,min,max) with min > 0" : ""));
+                }
+                keys.add(key);
+                distributions.add(distribution);
+            } else {
+                base.set(key, value);
+            }
+        }
+        return base;
+    }
+
+    static SimulationParameters parseParameters(Properties spec, List<String> keys, List<Distribution> distributions) {
+        return parseParameters(spec, new SimulationParameters(), keys, distributions);
+    }
+
+    Integrator integrator() {
+        return Integrator.create(integrator, dt, tolerance);
+    }
+
+    /// Draws trip's parameters from rng, in key order, and drives the trip
+    private void runTrip(int trip, SplittableRandom rng) {
+        SimulationParameters params = base.copy();
+        double[] drawn = draws[trip];
+        for (int k = 0; k < drawnKeys.length; k++) {
+            drawn[k] = distributions[k].sample(rng);
+            params.set(drawnKeys[k], Double.toString(drawn[k]));
+        }
+        DriverInput driver = cycle != null ? new DriveCycleDriver(cycle) : BatchRunner.constant(acceleration);
+        RunSummary summary = BatchRunner.run(params, driver, duration, integrator(), null);
+        range[trip] = summary.estimatedRange();
+        whPerKm[trip] = summary.energyEfficiency;
+        peakTemp[trip] = summary.peakBatteryTemp;
+    }
+
+    /// Runs every trip on a pool of the given size and returns the wall time in nanoseconds
+    long run(int threads) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new TripTask(0, trips, new SplittableRandom(seed)));
+        } finally {
+            pool.shutdown();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /// Halves the trip range until LEAF_TRIPS remain, splitting the generator once per halving; the tree
+    /// depends only on the range, never on which worker runs which half
+    private final class TripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final SplittableRandom rng;
+
+        TripTask(int from, int to, SplittableRandom rng) {
+            this.from = from;
+            this.to = to;
+            this.rng = rng;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_TRIPS) {
+                int mid = (from + to) >>> 1;
+                SplittableRandom upper = rng.split();
+                invokeAll(new TripTask(from, mid, rng), new TripTask(mid, to, upper));
+                return;
+            }
+            for (int trip = from; trip < to; trip++) runTrip(trip, rng);
+        }
+    }
+
+    /// Writes one row per trip, in trip order: the drawn values and the three results
+    void writeTrips(Writer out) throws IOException {
+        StringBuilder header = new StringBuilder("trip");
+        for (String key : drawnKeys) header.append(',').append(key);
+        out.write(header.append(",range_km,wh_per_km,peak_temp_c\n").toString());
+        for (int trip = 0; trip < trips; trip++) {
+            StringBuilder line = new StringBuilder().append(trip);
+            for (double value : draws[trip]) line.append(',').append(value);
+            line.append(String.format(Locale.ROOT, ",%.4f,%.3f,%.3f%n", range[trip], whPerKm[trip], peakTemp[trip]));
+            out.write(line.toString());
+        }
+    }
+
+    String report(int bins) {
+        StringBuilder text = new StringBuilder(Statistics.header());
+        Statistics[] results = {
+                new Statistics("Range (km)", range),
+                new Statistics("Wh/km", whPerKm),
+                new Statistics("Peak temp (°C)", peakTemp)
+        };
+        for (Statistics result : results) text.append(result.row());
+        for (Statistics result : results) text.append(result.histogram(bins));
+        return text.toString();
+    }
+
+    /// A parameter's sampling distribution
+    static final class Distribution {
+        final String kind;
+        final double[] args;
+
+        private Distribution(String kind, double[] args) {
+            this.kind = kind;
+            this.args = args;
+        }
+
+        /// uniform(min,max), normal(mean,sd), normal(mean,sd,min,max) or triangular(min,mode,max)
+        static Distribution parse(String key, String text) {
+            int open = text.indexOf('(');
+            if (open <= 0) throw new IllegalArgumentException(key + ": expected a distribution, got " + text);
+            String kind = text.substring(0, open).trim().toLowerCase(Locale.ROOT);
+            String[] parts = text.substring(open + 1, text.length() - 1).split(",");
+            double[] args = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) args[i] = Double.parseDouble(parts[i].trim());
+            boolean valid = switch (kind) {
+                case "uniform" -> args.length == 2 && args[0] <= args[1];
+                case "normal" -> (args.length == 2 || args.length == 4 && args[2] <= args[3]) && args[1] >= 0;
+                case "triangular" -> args.length == 3 && args[0] <= args[1] && args[1] <= args[2] && args[0] < args[2];
+                default -> throw new IllegalArgumentException(key + ": unknown distribution " + kind
+                        + " (uniform, normal, triangular)");
+            };
+            if (!valid) throw new IllegalArgumentException(key + ": invalid arguments for " + text);
+            return new Distribution(kind, args);
+        }
+
+        double sample(SplittableRandom rng) {
+            return switch (kind) {
+                case "uniform" -> args[0] + (args[1] - args[0]) * rng.nextDouble();
+                case "normal" -> {
+                    double value = args[0] + args[1] * rng.nextGaussian();
+                    yield args.length == 4 ? Math.max(args[2], Math.min(args[3], value)) : value;
+                }
+                default -> { // triangular, by inverting its distribution function
+                    double u = rng.nextDouble();
+                    double lo = args[0], mode = args[1], hi = args[2];
+                    double split = (mode - lo) / (hi - lo);
+                    yield u < split
+                            ? lo + Math.sqrt(u * (hi - lo) * (mode - lo))
+                            : hi - Math.sqrt((1 - u) * (hi - lo) * (hi - mode));
+                }
+            };
+        }
+
+        /// Smallest value sample can return
+        double lowest() {
+            return kind.equals("normal") ? args.length == 4 ? args[2] : Double.NEGATIVE_INFINITY : args[0];
+        }
+    }
+
+    /// Summary of one result over all trips; NaN values (trips that used no charge) are left out
+    static final class Statistics {
+        final String name;
+        final double[] sorted;
+        final double mean;
+        final double sd;
+
+        Statistics(String name, double[] values) {
+            this.name = name;
+            this.sorted = Arrays.stream(values).filter(v -> !Double.isNaN(v)).sorted().toArray();
+            double sum = 0;
+            for (double v : sorted) sum += v;
+            mean = sorted.length > 0 ? sum / sorted.length : Double.NaN;
+            double squares = 0;
+            for (double v : sorted) squares += (v - mean) * (v - mean);
+            sd = sorted.length > 1 ? Math.sqrt(squares / (sorted.length - 1)) : 0;
+        }
+
+        /// Column titles for row()
+        static String header() {
+            StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%-16s %10s %10s", "", "mean", "sd"));
+            for (double p : PERCENTILES) text.append(String.format(Locale.ROOT, " %9s", "p" + (int) p));
+            return text.append(System.lineSeparator()).toString();
+        }
+
+        /// Linear interpolation between the closest ranks
+        double percentile(double p) {
+            if (sorted.length == 0) return Double.NaN;
+            double rank = p / 100 * (sorted.length - 1);
+            int lower = (int) Math.floor(rank);
+            int upper = Math.min(lower + 1, sorted.length - 1);
+            return sorted[lower] + (sorted[upper] - sorted[lower]) * (rank - lower);
+        }
+
+        String row() {
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-16s %10.3f %10.3f", name, mean, sd));
+            for (double p : PERCENTILES) line.append(String.format(Locale.ROOT, " %9.3f", percentile(p)));
+            return line.append(System.lineSeparator()).toString();
+        }
+
+        /// Counts in equal-width bins from the minimum to the maximum
+        long[] counts(int bins) {
+            long[] counts = new long[bins];
+            if (sorted.length == 0) return counts;
+            double lo = sorted[0];
+            double width = (sorted[sorted.length - 1] - lo) / bins;
+            for (double v : sorted) {
+                int bin = width > 0 ? (int) ((v - lo) / width) : 0;
+                counts[Math.min(bin, bins - 1)]++;
+            }
+            return counts;
+        }
+
+        String histogram(int bins) {
+            StringBuilder text = new StringBuilder(System.lineSeparator()).append(name).append(':')
+                    .append(System.lineSeparator());
+            if (sorted.length == 0) return text.append("  no trips").append(System.lineSeparator()).toString();
+            long[] counts = counts(bins);
+            long most = Arrays.stream(counts).max().orElse(1);
+            double lo = sorted[0];
+            double width = (sorted[sorted.length - 1] - lo) / bins;
+            for (int b = 0; b < bins; b++) {
+                int bar = (int) Math.round(40.0 * counts[b] / most);
+                text.append(String.format(Locale.ROOT, "  %10.3f - %10.3f | %-40s %d%n",
+                        lo + b * width, lo + (b + 1) * width, "#".repeat(bar), counts[b]));
+            }
+            return text.toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MonteCarlo <spec.properties> [--threads N] [--out trips.csv] [--bins N]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = null;
+        int bins = DEFAULT_BINS;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--out" -> out = Path.of(args[++i]);
+                case "--bins" -> bins = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        MonteCarlo monteCarlo = parse(SimulationParameters.readProperties(Path.of(args[0])));
+        System.out.println("Trips: " + monteCarlo.trips + " drawing " + String.join(", ", monteCarlo.drawnKeys)
+                + " (seed " + monteCarlo.seed + ")");
+        long wallNanos = monteCarlo.run(threads);
+        System.out.print(monteCarlo.report(bins));
+        System.out.printf(Locale.ROOT, "%nWall Time: %.3f s on %d threads, %.0f trips/s%n",
+                wallNanos / 1e9, threads, monteCarlo.trips / (wallNanos / 1e9));
+        if (out != null) {
+            try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                monteCarlo.writeTrips(writer);
+            }
+            System.out.println("Trips: " + out);
+        }
+    }
+}
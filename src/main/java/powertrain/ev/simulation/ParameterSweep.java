@@ -0,0 +1,252 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Expands a grid of parameter values into independent headless runs and spreads them over a
+/// work-stealing pool. Each finished run is appended to the results CSV immediately.
+/// Usage: ParameterSweep <spec.properties> [--out results.csv] [--threads N] [--cache dir]
+/// The spec uses the parameter file keys; a value of start:end:step or a comma list makes that key an
+/// axis of the grid, a single value fixes it. Run settings: duration (as for BatchRunner, or "cycle"),
+/// cycle, dt, acceleration, integrator and tolerance. With --cache, grid points computed by an earlier
+/// sweep or batch run are read back from the ResultCache instead of being integrated again.
+public final class ParameterSweep {
+    final SimulationParameters base;
+    final String[] axisKeys;
+    final String[][] axisValues;
+    final long runs;
+    final DriveCycle cycle;
+    final double acceleration;
+    final double duration;
+    final double dt;
+    final String integrator;
+    final double tolerance;
+    ResultCache cache;
+
+    private ParameterSweep(SimulationParameters base, List<String> keys, List<String[]> values, DriveCycle cycle,
+                           double acceleration, double duration, double dt, String integrator, double tolerance) {
+        this.base = base;
+        this.axisKeys = keys.toArray(new String[0]);
+        this.axisValues = values.toArray(new String[0][]);
+        long count = 1;
+        for (String[] axis : axisValues) count = Math.multiplyExact(count, axis.length);
+        this.runs = count;
+        this.cycle = cycle;
+        this.acceleration = acceleration;
+        this.duration = duration;
+        this.dt = dt;
+        this.integrator = integrator;
+        this.tolerance = tolerance;
+        integrator(); // reject unknown names before any run starts
+    }
+
+    static ParameterSweep parse(Properties spec) throws IOException {
+        SimulationParameters base = new SimulationParameters();
+        List<String> keys = new ArrayList<>();
+        List<String[]> values = new ArrayList<>();
+        for (String key : SimulationParameters.KEYS) {
+            String value = spec.getProperty(key);
+            if (value == null) continue;
+            String[] axis = expand(key, value.trim());
+            for (String v : axis) base.copy().set(key, v); // validate every grid value up front
+            if (axis.length > 1) {
+                keys.add(key);
+                values.add(axis);
+            } else {
+                base.set(key, axis[0]);
+            }
+        }
+        String cycleName = spec.getProperty("cycle");
+        DriveCycle cycle = cycleName != null ? DriveCycle.resolve(cycleName.trim()) : null;
+        String durationText = spec.getProperty("duration", cycle != null ? "cycle" : "1h").trim();
+        double duration;
+        if (durationText.equalsIgnoreCase("cycle")) {
+            if (cycle == null) throw new IllegalArgumentException("Duration 'cycle' needs a cycle");
+            duration = cycle.duration();
+        } else {
+            duration = BatchRunner.parseDuration(durationText);
+        }
+        double dt = SimulationParameters.number(spec, "dt", BatchRunner.DEFAULT_DT);
+        double acceleration = SimulationParameters.number(spec, "acceleration", 0);
+        String integrator = spec.getProperty("integrator", "euler").trim();
+        double tolerance = SimulationParameters.number(spec, "tolerance", BatchRunner.DEFAULT_TOLERANCE);
+        return new ParameterSweep(base, keys, values, cycle, acceleration, duration, dt, integrator, tolerance);
+    }
+
+    /// start:end:step (inclusive) or a comma separated list
+    static String[] expand(String key, String value) {
+        if (value.contains(":")) {
+            String[] parts = value.split(":");
+            if (parts.length != 3) throw new IllegalArgumentException(key + ": expected start:end:step, got " + value);
+            double start = Double.parseDouble(parts[0].trim());
+            double end = Double.parseDouble(parts[1].trim());
+            double step = Double.parseDouble(parts[2].trim());
+            if (!(step > 0) || end < start) throw new IllegalArgumentException(key + ": empty range " + value);
+            int count = (int) Math.floor((end - start) / step + 1e-9) + 1;
+            String[] axis = new String[count];
+            for (int i = 0; i < count; i++) axis[i] = Double.toString(start + i * step);
+            return axis;
+        }
+        String[] axis = value.split(",");
+        for (int i = 0; i < axis.length; i++) axis[i] = axis[i].trim();
+        return axis;
+    }
+
+    /// Parameters of one grid point; the last axis varies fastest
+    SimulationParameters paramsFor(long index) {
+        SimulationParameters params = base.copy();
+        for (int a = axisKeys.length - 1; a >= 0; a--) {
+            int size = axisValues[a].length;
+            params.set(axisKeys[a], axisValues[a][(int) (index % size)]);
+            index /= size;
+        }
+        return params;
+    }
+
+    DriverInput driver() {
+        return cycle != null ? new DriveCycleDriver(cycle) : BatchRunner.constant(acceleration);
+    }
+
+    /// A fresh integrator per run, since integrators keep step-size state
+    Integrator integrator() {
+        return Integrator.create(integrator, dt, tolerance);
+    }
+
+    RunSummary runOne(long index) {
+        return cache != null
+                ? cache.run(paramsFor(index), driver(), duration, integrator())
+                : BatchRunner.run(paramsFor(index), driver(), duration, integrator(), null);
+    }
+
+    String header() {
+        StringBuilder line = new StringBuilder("run");
+        for (String key : axisKeys) line.append(',').append(key);
+        return line.append(",soc_pct,distance_km,energy_kwh,wh_per_km,range_km,peak_temp_c,steps\n").toString();
+    }
+
+    String row(long index, RunSummary summary) {
+        StringBuilder line = new StringBuilder().append(index);
+        for (int a = 0, n = axisKeys.length; a < n; a++) {
+            line.append(',').append(valueOf(index, a));
+        }
+        line.append(String.format(Locale.ROOT, ",%.4f,%.4f,%.5f,%.3f,%.3f,%.3f,%d%n",
+                summary.soc, summary.distance, summary.energyConsumed, summary.energyEfficiency,
+                summary.estimatedRange(), summary.peakBatteryTemp, summary.steps));
+        return line.toString();
+    }
+
+    private String valueOf(long index, int axis) {
+        for (int a = axisKeys.length - 1; a > axis; a--) index /= axisValues[a].length;
+        return axisValues[axis][(int) (index % axisValues[axis].length)];
+    }
+
+    /// Runs the whole grid on a pool of the given size, writing one CSV row per finished run
+    Throughput run(int threads, Writer out) throws IOException {
+        out.write(header());
+        AtomicLong steps = new AtomicLong();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new SweepTask(0, runs, out, steps));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        out.flush();
+        return new Throughput(runs, steps.get(), System.nanoTime() - start, threads);
+    }
+
+    /// Splits the index range in halves until single runs remain; idle workers steal the other halves
+    private final class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long from;
+        private final long to;
+        private final Writer out;
+        private final AtomicLong steps;
+
+        SweepTask(long from, long to, Writer out, AtomicLong steps) {
+            this.from = from;
+            this.to = to;
+            this.out = out;
+            this.steps = steps;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new SweepTask(from, mid, out, steps), new SweepTask(mid, to, out, steps));
+                return;
+            }
+            RunSummary summary = runOne(from);
+            if (!summary.cached) steps.addAndGet(summary.steps); // only steps actually integrated
+            String line = row(from, summary);
+            try {
+                synchronized (out) {
+                    out.write(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static final class Throughput {
+        final long runs;
+        final long steps;
+        final long wallNanos;
+        final int threads;
+
+        Throughput(long runs, long steps, long wallNanos, int threads) {
+            this.runs = runs;
+            this.steps = steps;
+            this.wallNanos = wallNanos;
+            this.threads = threads;
+        }
+
+        String format() {
+            double seconds = wallNanos / 1e9;
+            return String.format(Locale.ROOT, "Runs: %d on %d threads in %.3f s%nThroughput: %.1f runs/s, %.0f steps/s%n",
+                    runs, threads, seconds, runs / seconds, steps / seconds);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ParameterSweep <spec.properties> [--out results.csv] [--threads N] [--cache dir]");
+            System.exit(2);
+        }
+        Path out = Path.of("sweep_results.csv");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path cacheDir = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> out = Path.of(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--cache" -> cacheDir = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        ParameterSweep sweep = parse(SimulationParameters.readProperties(Path.of(args[0])));
+        if (cacheDir != null) sweep.cache = ResultCache.open(cacheDir);
+        System.out.println("Grid: " + sweep.runs + " runs over " + String.join(", ", sweep.axisKeys));
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            System.out.print(sweep.run(threads, writer).format());
+        }
+        if (sweep.cache != null) System.out.print(sweep.cache.stats());
+        System.out.println("Results: " + out);
+    }
+}
@@ -0,0 +1,44 @@
+package powertrain.ev.simulation;
+
+/// Live performance of the interactive app, registered as powertrain.ev.simulation:type=Performance.
+/// Latencies and counters cover the time since the last reset.
+public interface PerformanceMXBean {
+    /// Physics advance and sample publication per tick, on the simulation thread
+    LatencySummary getSimulationTick();
+
+    /// Draining published samples into the waveform history, per frame
+    LatencySummary getSampleDrain();
+
+    /// Stroking the new waveform segments, per frame
+    LatencySummary getWaveformDraw();
+
+    /// Status label refresh, per frame
+    LatencySummary getStatusRefresh();
+
+    /// Interval between animation pulses
+    LatencySummary getFrameInterval();
+
+    /// One remaining-range look-ahead, on the range worker thread
+    LatencySummary getRangePrediction();
+
+    /// Simulated time over wall time while running; below 1 when ticks hit the catch-up clamp
+    double getSimulatedSecondsPerWallSecond();
+
+    /// Ticks whose elapsed wall time exceeded FixedStepLoop.MAX_FRAME_TIME and was truncated
+    long getClampedTicks();
+
+    /// Samples the simulation thread dropped because the renderer fell a full queue behind
+    long getDroppedSamples();
+
+    /// Bytes allocated by the simulation thread, or -1 if the JVM cannot measure it
+    long getSimulationThreadAllocatedBytes();
+
+    /// Bytes allocated by the JavaFX application thread, or -1 if the JVM cannot measure it
+    long getFxThreadAllocatedBytes();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void reset();
+}
@@ -0,0 +1,200 @@
+package powertrain.ev.simulation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/// Phase timings and counters of the interactive app. Each histogram has one writer: the simulation
+/// thread records its ticks, the FX thread its frame phases, the range worker its look-aheads.
+/// Timestamps come from the clocks the loops read anyway where possible, so an enabled monitor adds a
+/// bucket computation and a few ordered stores per tick or phase; a disabled one skips even those.
+/// Allocation is read from the JVM's per-thread counters only when queried.
+final class PerformanceMonitor implements PerformanceMXBean {
+    static final String OBJECT_NAME = "powertrain.ev.simulation:type=Performance";
+
+    final LatencyHistogram tick = new LatencyHistogram();
+    final LatencyHistogram drain = new LatencyHistogram();
+    final LatencyHistogram draw = new LatencyHistogram();
+    final LatencyHistogram status = new LatencyHistogram();
+    final LatencyHistogram frame = new LatencyHistogram();
+    final LatencyHistogram prediction = new LatencyHistogram();
+    private final AtomicLong simulatedNanos = new AtomicLong();
+    private final AtomicLong wallNanos = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile SimulationThread simulation;
+    private volatile long fxThreadId = -1;
+    private long lastFrame; // FX thread only
+    /// Counter values at the last reset
+    private long simulatedBaseline, wallBaseline, clampedBaseline, droppedBaseline;
+    private long simulationAllocatedBaseline, fxAllocatedBaseline;
+    private ObjectName registeredName;
+
+    void attach(SimulationThread simulation, Thread fxThread) {
+        this.simulation = simulation;
+        this.fxThreadId = fxThread.getId();
+    }
+
+    /// Start of a timed phase, or 0 when disabled
+    long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /// Ends a phase started with now()
+    void record(LatencyHistogram phase, long start) {
+        if (start != 0) phase.record(System.nanoTime() - start);
+    }
+
+    /// Simulation thread: one running tick that took busyNanos and advanced simulated time by
+    /// simulatedSeconds over elapsedNanos of wall time
+    void recordTick(long busyNanos, double simulatedSeconds, long elapsedNanos) {
+        if (!enabled) return;
+        tick.record(busyNanos);
+        simulatedNanos.lazySet(simulatedNanos.get() + (long) (simulatedSeconds * 1e9));
+        wallNanos.lazySet(wallNanos.get() + elapsedNanos);
+    }
+
+    /// FX thread: pulse timestamp from the AnimationTimer
+    void recordFrame(long now) {
+        if (enabled && lastFrame != 0) frame.record(now - lastFrame);
+        lastFrame = enabled ? now : 0;
+    }
+
+    /// Registers with the platform MBean server; failure leaves the app running unmonitored
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            System.err.println("Performance MBean not registered: " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            // already gone
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public LatencySummary getSimulationTick() {
+        return tick.summary();
+    }
+
+    @Override
+    public LatencySummary getSampleDrain() {
+        return drain.summary();
+    }
+
+    @Override
+    public LatencySummary getWaveformDraw() {
+        return draw.summary();
+    }
+
+    @Override
+    public LatencySummary getStatusRefresh() {
+        return status.summary();
+    }
+
+    @Override
+    public LatencySummary getFrameInterval() {
+        return frame.summary();
+    }
+
+    @Override
+    public LatencySummary getRangePrediction() {
+        return prediction.summary();
+    }
+
+    @Override
+    public synchronized double getSimulatedSecondsPerWallSecond() {
+        long wall = wallNanos.get() - wallBaseline;
+        return wall > 0 ? (double) (simulatedNanos.get() - simulatedBaseline) / wall : 0;
+    }
+
+    @Override
+    public synchronized long getClampedTicks() {
+        SimulationThread sim = simulation;
+        return sim == null ? 0 : sim.clampedTicks() - clampedBaseline;
+    }
+
+    @Override
+    public synchronized long getDroppedSamples() {
+        SimulationThread sim = simulation;
+        return sim == null ? 0 : sim.samples.dropped() - droppedBaseline;
+    }
+
+    @Override
+    public synchronized long getSimulationThreadAllocatedBytes() {
+        SimulationThread sim = simulation;
+        long bytes = sim == null ? -1 : allocatedBytes(sim.threadId());
+        return bytes < 0 ? -1 : bytes - simulationAllocatedBaseline;
+    }
+
+    @Override
+    public synchronized long getFxThreadAllocatedBytes() {
+        long bytes = allocatedBytes(fxThreadId);
+        return bytes < 0 ? -1 : bytes - fxAllocatedBaseline;
+    }
+
+    private static long allocatedBytes(long threadId) {
+        if (threadId < 0) return -1;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean allocation)
+                || !allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocation.getThreadAllocatedBytes(threadId);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{tick, drain, draw, status, frame, prediction}) {
+            histogram.reset();
+        }
+        simulatedBaseline = simulatedNanos.get();
+        wallBaseline = wallNanos.get();
+        SimulationThread sim = simulation;
+        if (sim != null) {
+            clampedBaseline = sim.clampedTicks();
+            droppedBaseline = sim.samples.dropped();
+            simulationAllocatedBaseline = Math.max(allocatedBytes(sim.threadId()), 0);
+        }
+        fxAllocatedBaseline = Math.max(allocatedBytes(fxThreadId), 0);
+    }
+
+    /// Few-line summary for the in-app overlay
+    String overlayText() {
+        LatencySummary ticks = tick.summary();
+        LatencySummary frames = frame.summary();
+        return String.format(Locale.ROOT, "tick p50 %.0f µs  p99 %.0f µs%n"
+                        + "drain p99 %.0f µs  draw p99 %.0f µs  status p99 %.0f µs%n"
+                        + "frame p50 %.1f ms  p99 %.1f ms  range p99 %.1f ms%n"
+                        + "sim speed %.2fx  clamped %d  dropped %d%n"
+                        + "allocated: sim %d KiB  FX %d KiB",
+                ticks.getP50Micros(), ticks.getP99Micros(), drain.summary().getP99Micros(),
+                draw.summary().getP99Micros(), status.summary().getP99Micros(),
+                frames.getP50Micros() / 1000, frames.getP99Micros() / 1000, prediction.summary().getP99Micros() / 1000,
+                getSimulatedSecondsPerWallSecond(), getClampedTicks(), getDroppedSamples(),
+                getSimulationThreadAllocatedBytes() >> 10, getFxThreadAllocatedBytes() >> 10);
+    }
+}
@@ -0,0 +1,222 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Content-addressed store of headless run results. The key is a SHA-256 over every physics input:
+/// the numeric parameters, the resolved drive mode entry, the efficiency map, the driver's acceleration
+/// profile, the duration and the integrator with its step size or tolerance. A bounded LRU map sits in front of a directory of
+/// fixed-size result files, which is trimmed oldest-first once it grows past its byte budget.
+/// MODEL_REVISION is part of every key; bump it whenever SimulationEngine's physics change so stale
+/// results are never returned.
+final class ResultCache {
+    static final int MODEL_REVISION = 9;
+    static final int DEFAULT_MEMORY_ENTRIES = 1024;
+    static final long DEFAULT_DISK_BYTES = 64L << 20;
+    private static final int MAGIC = 0x32565645; // "EVV2"
+    private static final int RECORD_BYTES = Integer.BYTES + 10 * Long.BYTES;
+    private static final String SUFFIX = ".run";
+
+    private final Path directory;
+    private final long diskBytes;
+    private final Map<String, RunSummary> memory;
+    private final AtomicLong diskUsed = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ResultCache(Path directory, int memoryEntries, long diskBytes) {
+        this.directory = directory;
+        this.diskBytes = diskBytes;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RunSummary> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    static ResultCache open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MEMORY_ENTRIES, DEFAULT_DISK_BYTES);
+    }
+
+    static ResultCache open(Path directory, int memoryEntries, long diskBytes) throws IOException {
+        Files.createDirectories(directory);
+        ResultCache cache = new ResultCache(directory, memoryEntries, diskBytes);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) cache.diskUsed.addAndGet(Files.size(file));
+        }
+        return cache;
+    }
+
+    /// Returns the cached result of this run, or runs it and stores the result. Runs whose driver has
+    /// no profile key are always computed.
+    RunSummary run(SimulationParameters params, DriverInput driver, double duration, double dt) {
+        return run(params, driver, duration, new EulerIntegrator(dt));
+    }
+
+    RunSummary run(SimulationParameters params, DriverInput driver, double duration, Integrator integrator) {
+        String key = key(params, driver.profileKey(), duration, integrator.describe());
+        if (key != null) {
+            RunSummary cached = get(key);
+            if (cached != null) return cached;
+        }
+        misses.incrementAndGet();
+        RunSummary summary = BatchRunner.run(params, driver, duration, integrator, null);
+        if (key != null) put(key, summary);
+        return summary;
+    }
+
+    /// Hex SHA-256 of the canonical run inputs, or null when profileKey is null
+    static String key(SimulationParameters p, String profileKey, double duration, String integrator) {
+        return key(MODEL_REVISION, p, profileKey, duration, integrator);
+    }
+
+    /// The key as it was, or will be, under another model revision
+    static String key(int revision, SimulationParameters p, String profileKey, double duration, String integrator) {
+        if (profileKey == null) return null;
+        byte[] mode = p.driveMode.getBytes(StandardCharsets.UTF_8);
+        byte[] profile = profileKey.getBytes(StandardCharsets.UTF_8);
+        byte[] map = p.efficiencyMap.digest.getBytes(StandardCharsets.UTF_8);
+        byte[] scheme = integrator.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 17 * Double.BYTES + 1 + 16 + mode.length + profile.length
+                + map.length + scheme.length);
+        buffer.putInt(revision);
+        buffer.putDouble(p.batteryVoltage).putDouble(p.batteryCapacity).putDouble(p.thermalMass).putDouble(p.ambientTemp)
+                .putDouble(p.cellsParallel).putDouble(p.cellSpread).putDouble(p.motorPower).putDouble(p.gearRatio).putDouble(p.vehicleMass)
+                .putDouble(p.dragCoefficient).putDouble(p.frontalArea).putDouble(p.airDensity)
+                .putDouble(p.rollingResistance).putDouble(p.regenEfficiency);
+        buffer.put((byte) (p.regenBraking ? 1 : 0));
+        buffer.putDouble(p.maxAccel).putDouble(p.powerFactor);
+        buffer.putInt(mode.length).put(mode);
+        buffer.putInt(profile.length).put(profile);
+        buffer.putInt(map.length).put(map);
+        buffer.putInt(scheme.length).put(scheme);
+        buffer.putDouble(duration);
+        return HexFormat.of().formatHex(sha256().digest(buffer.array()));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is a required JDK algorithm", e);
+        }
+    }
+
+    RunSummary get(String key) {
+        synchronized (memory) {
+            RunSummary summary = memory.get(key);
+            if (summary != null) {
+                memoryHits.incrementAndGet();
+                return summary;
+            }
+        }
+        RunSummary summary = readFile(file(key));
+        if (summary == null) return null;
+        diskHits.incrementAndGet();
+        synchronized (memory) {
+            memory.put(key, summary);
+        }
+        return summary;
+    }
+
+    void put(String key, RunSummary summary) {
+        synchronized (memory) {
+            memory.put(key, summary.asCached());
+        }
+        try {
+            writeFile(file(key), summary);
+            if (diskUsed.get() > diskBytes) trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    String stats() {
+        return String.format(Locale.ROOT, "Cache: %d memory hits, %d disk hits, %d misses, %.1f KiB on disk%n",
+                memoryHits.get(), diskHits.get(), misses.get(), diskUsed.get() / 1024.0);
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /// Null for a missing or unreadable entry; a hit refreshes the file's age for eviction
+    private static RunSummary readFile(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (bytes.length != RECORD_BYTES || buffer.getInt() != MAGIC) return null;
+            RunSummary summary = new RunSummary(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(),
+                    buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getLong(), buffer.getLong(),
+                    buffer.getLong(), buffer.getLong(), true);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return summary;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /// Written to a temporary file and moved into place, so concurrent readers never see half a record
+    private void writeFile(Path file, RunSummary s) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        buffer.putInt(MAGIC).putDouble(s.soc).putDouble(s.distance).putDouble(s.energyConsumed)
+                .putDouble(s.energyEfficiency).putDouble(s.peakBatteryTemp).putDouble(s.simulatedTime)
+                .putLong(s.steps).putLong(s.rejectedSteps).putLong(s.evaluations).putLong(s.wallNanos);
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        Files.write(temp, buffer.array());
+        boolean existed = Files.exists(file);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (!existed) diskUsed.addAndGet(RECORD_BYTES);
+    }
+
+    /// Deletes the least recently used files until the directory is back under its budget
+    private synchronized void trim() throws IOException {
+        if (diskUsed.get() <= diskBytes) return;
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> ages = new LinkedHashMap<>();
+        long used = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    ages.put(file, Files.getLastModifiedTime(file));
+                    used += Files.size(file);
+                    files.add(file);
+                } catch (NoSuchFileException e) {
+                    // removed by another process
+                }
+            }
+        }
+        files.sort((a, b) -> ages.get(a).compareTo(ages.get(b)));
+        for (Path file : files) {
+            if (used <= diskBytes) break;
+            if (Files.deleteIfExists(file)) used -= RECORD_BYTES;
+        }
+        diskUsed.set(used);
+    }
+}
@@ -0,0 +1,88 @@
+package powertrain.ev.simulation;
+
+/// Fixed-capacity sliding window of samples that overwrites the oldest value once full.
+/// Window minimum and maximum are tracked with monotonic deques of sample sequence numbers,
+/// so add, min and max are amortized O(1) whatever the capacity.
+final class RingBuffer {
+    private final int capacity;
+    private final double[] values;
+    /// Deques hold sequence numbers of candidate extremes, oldest first; stored circularly
+    private final long[] maxQueue;
+    private final long[] minQueue;
+    private int maxHead, maxSize;
+    private int minHead, minSize;
+    private long count; // samples added since the last clear
+
+    RingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        values = new double[capacity];
+        maxQueue = new long[capacity];
+        minQueue = new long[capacity];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /// Samples added since the last clear, including those already overwritten
+    long count() {
+        return count;
+    }
+
+    void clear() {
+        count = 0;
+        maxHead = maxSize = 0;
+        minHead = minSize = 0;
+    }
+
+    /// Clears the window and fills every slot with value
+    void fill(double value) {
+        clear();
+        for (int i = 0; i < capacity; i++) add(value);
+    }
+
+    void add(double value) {
+        long seq = count++;
+        long expired = seq - capacity;
+        if (maxSize > 0 && maxQueue[maxHead] == expired) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        if (minSize > 0 && minQueue[minHead] == expired) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        while (maxSize > 0 && values[slot(maxQueue[(maxHead + maxSize - 1) % capacity])] <= value) maxSize--;
+        while (minSize > 0 && values[slot(minQueue[(minHead + minSize - 1) % capacity])] >= value) minSize--;
+        values[slot(seq)] = value;
+        maxQueue[(maxHead + maxSize++) % capacity] = seq;
+        minQueue[(minHead + minSize++) % capacity] = seq;
+    }
+
+    /// i-th oldest sample in the window
+    double get(int i) {
+        long first = count > capacity ? count - capacity : 0;
+        return values[slot(first + i)];
+    }
+
+    double latest() {
+        return values[slot(count - 1)];
+    }
+
+    double max() {
+        return maxSize > 0 ? values[slot(maxQueue[maxHead])] : Double.NaN;
+    }
+
+    double min() {
+        return minSize > 0 ? values[slot(minQueue[minHead])] : Double.NaN;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+}
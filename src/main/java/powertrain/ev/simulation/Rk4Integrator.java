@@ -0,0 +1,52 @@
+package powertrain.ev.simulation;
+
+/// Classical fourth-order Runge-Kutta on the engine's continuous state at a fixed step, with the
+/// driver's command evaluated at each of the four stages
+final class Rk4Integrator implements Integrator {
+    private final double dt;
+    private final double[] y = new double[SimulationEngine.STATE_SIZE];
+    private final double[] trial = new double[SimulationEngine.STATE_SIZE];
+    private final double[] k1 = new double[SimulationEngine.STATE_SIZE];
+    private final double[] k2 = new double[SimulationEngine.STATE_SIZE];
+    private final double[] k3 = new double[SimulationEngine.STATE_SIZE];
+    private final double[] k4 = new double[SimulationEngine.STATE_SIZE];
+
+    Rk4Integrator(double dt) {
+        if (!(dt > 0)) throw new IllegalArgumentException("Step must be positive: " + dt);
+        this.dt = dt;
+    }
+
+    @Override
+    public double advance(SimulationEngine engine, DriverInput driver, double maxStep) {
+        double h = Math.min(dt, maxStep);
+        Integrator.command(engine, driver, h);
+        engine.saveState(y);
+        Integrator.evaluate(engine, driver, 0, y, k1);
+        for (int i = 0; i < y.length; i++) trial[i] = y[i] + 0.5 * h * k1[i];
+        Integrator.evaluate(engine, driver, 0.5 * h, trial, k2);
+        for (int i = 0; i < y.length; i++) trial[i] = y[i] + 0.5 * h * k2[i];
+        Integrator.evaluate(engine, driver, 0.5 * h, trial, k3);
+        for (int i = 0; i < y.length; i++) trial[i] = y[i] + h * k3[i];
+        Integrator.evaluate(engine, driver, h, trial, k4);
+        for (int i = 0; i < y.length; i++) {
+            y[i] += h / 6 * (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]);
+        }
+        engine.loadState(y, h);
+        return h;
+    }
+
+    @Override
+    public double fixedStep() {
+        return dt;
+    }
+
+    @Override
+    public Integrator fork() {
+        return new Rk4Integrator(dt);
+    }
+
+    @Override
+    public String describe() {
+        return "rk4 dt=" + dt;
+    }
+}
@@ -0,0 +1,71 @@
+package powertrain.ev.simulation;
+
+import java.util.Locale;
+
+/// Final figures of a headless run
+final class RunSummary {
+    final double soc; // %
+    final double distance; // km
+    final double energyConsumed; // kWh
+    final double energyEfficiency; // Wh/km
+    final double peakBatteryTemp; // °C
+    final double simulatedTime; // s
+    final long steps; // accepted
+    final long rejectedSteps;
+    final long evaluations; // of the model
+    final long wallNanos;
+    final boolean cached; // returned by ResultCache; wallNanos is that of the original run
+
+    RunSummary(SimulationEngine engine, long wallNanos) {
+        this(engine.soc, engine.distance, engine.energyConsumed, engine.energyEfficiency,
+                engine.peakBatteryTemp, engine.time, engine.steps, engine.rejectedSteps, engine.evaluations,
+                wallNanos, false);
+    }
+
+    RunSummary(double soc, double distance, double energyConsumed, double energyEfficiency,
+               double peakBatteryTemp, double simulatedTime, long steps, long rejectedSteps, long evaluations,
+               long wallNanos, boolean cached) {
+        this.soc = soc;
+        this.distance = distance;
+        this.energyConsumed = energyConsumed;
+        this.energyEfficiency = energyEfficiency;
+        this.peakBatteryTemp = peakBatteryTemp;
+        this.simulatedTime = simulatedTime;
+        this.steps = steps;
+        this.rejectedSteps = rejectedSteps;
+        this.evaluations = evaluations;
+        this.wallNanos = wallNanos;
+        this.cached = cached;
+    }
+
+    RunSummary asCached() {
+        return new RunSummary(soc, distance, energyConsumed, energyEfficiency, peakBatteryTemp, simulatedTime,
+                steps, rejectedSteps, evaluations, wallNanos, true);
+    }
+
+    double stepsPerSecond() {
+        return wallNanos > 0 ? steps * 1e9 / wallNanos : 0;
+    }
+
+    /// Distance on a full battery at this run's consumption: the distance driven, scaled up by the share
+    /// of the battery used. NaN when no charge was used.
+    double estimatedRange() {
+        double used = (100 - soc) / 100;
+        return used > 0 ? distance / used : Double.NaN;
+    }
+
+    String format() {
+        return String.format(Locale.ROOT,
+                "State of Charge: %.2f %%%n" +
+                "Distance: %.3f km%n" +
+                "Energy Consumed: %.4f kWh%n" +
+                "Efficiency: %.2f Wh/km%n" +
+                "Peak Battery Temp: %.2f °C%n" +
+                "Simulated Time: %.1f s%n" +
+                "Steps: %d accepted, %d rejected, %d model evaluations%n" +
+                "Wall Time: %.3f ms%n" +
+                "Throughput: %.0f steps/s%s%n",
+                soc, distance, energyConsumed, energyEfficiency, peakBatteryTemp,
+                simulatedTime, steps, rejectedSteps, evaluations, wallNanos / 1e6, stepsPerSecond(), cached ? " (cached result)" : "");
+    }
+}
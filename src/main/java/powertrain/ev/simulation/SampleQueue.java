@@ -0,0 +1,70 @@
+package powertrain.ev.simulation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Bounded single-producer/single-consumer queue of fixed-width samples, stored inline in one array so
+/// neither side allocates. Each side owns one counter and only publishes it with a release store; the
+/// other side's counter is re-read only when the cached copy says the queue looks full or empty.
+/// A full queue rejects the new sample rather than blocking the producer.
+final class SampleQueue {
+    private final int width;
+    private final int mask;
+    private final double[] slots;
+    private final AtomicLong head = new AtomicLong(); // next sample to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next sample to write, written by the producer
+    private long headCache; // producer's view of head
+    private long tailCache; // consumer's view of tail
+    private volatile long dropped; // written by the producer only
+
+    /// capacity is rounded up to a power of two
+    SampleQueue(int capacity, int width) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.width = width;
+        this.mask = size - 1;
+        this.slots = new double[size * width];
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /// Producer side: copies sample in, or returns false and counts a drop when the queue is full
+    boolean offer(double[] sample) {
+        long t = tail.get();
+        if (t - headCache > mask) {
+            headCache = head.get();
+            if (t - headCache > mask) {
+                dropped++;
+                return false;
+            }
+        }
+        System.arraycopy(sample, 0, slots, (int) (t & mask) * width, width);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /// Consumer side: copies the oldest sample into out, or returns false when the queue is empty
+    boolean poll(double[] out) {
+        long h = head.get();
+        if (h == tailCache) {
+            tailCache = tail.get();
+            if (h == tailCache) return false;
+        }
+        System.arraycopy(slots, (int) (h & mask) * width, out, 0, width);
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /// Consumer side: discards everything published so far
+    void clear() {
+        tailCache = tail.get();
+        head.lazySet(tailCache);
+    }
+
+    /// Samples rejected because the consumer fell a full queue behind
+    long dropped() {
+        return dropped;
+    }
+}
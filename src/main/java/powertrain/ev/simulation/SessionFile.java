@@ -0,0 +1,33 @@
+package powertrain.ev.simulation;
+
+/// Layout of the session log shared by SessionRecorder and SessionReplay: everything the live app fed
+/// the engine, in the order the simulation thread applied it. Big-endian DataOutput records:
+/// header of magic, version, ResultCache.MODEL_REVISION and the engine snapshot when logging began,
+/// then one tag byte per event:
+/// SET key value (UTF), STEPS count (long) and dt (double) for a run of equal steps, RESET, CYCLE name
+/// (UTF) with its row count and time/speed pairs (0 rows for manual driving), RESTORE with the engine
+/// snapshot of the checkpoint restored (version 2), and END with the final engine snapshot, against
+/// which a replay is checked bit for bit.
+final class SessionFile {
+    static final int MAGIC = 0x4E535645; // "EVSN"
+    static final short VERSION = 2;
+    static final byte SET = 1;
+    static final byte STEPS = 2;
+    static final byte RESET = 3;
+    static final byte CYCLE = 4;
+    static final byte END = 5;
+    static final byte RESTORE = 6;
+    /// SET key of the manual acceleration command; every other key is a SimulationParameters key
+    static final String ACCELERATION = "acceleration";
+
+    private SessionFile() {}
+
+    /// Applies one SET event, live or in a replay
+    static void apply(SimulationEngine engine, String key, String value) {
+        if (key.equals(ACCELERATION)) {
+            engine.acceleration = Double.parseDouble(value);
+        } else {
+            engine.params.set(key, value);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/// Writes a SessionFile while the live app runs. Every method is called on the simulation thread, in
+/// the order the engine sees the events. Steps are run-length encoded, so an hour of driving without
+/// input changes is a few bytes; the buffered stream is only written out when it fills or on close.
+final class SessionRecorder implements StepObserver, Closeable {
+    private final Path path;
+    private final DataOutputStream out;
+    private final FixedStepLoop loop;
+    private final double[] snapshot = new double[SimulationEngine.SNAPSHOT_SIZE];
+    private long pendingSteps;
+    private double pendingDt = Double.NaN;
+    private long events;
+
+    private SessionRecorder(Path path, DataOutputStream out, FixedStepLoop loop) {
+        this.path = path;
+        this.out = out;
+        this.loop = loop;
+    }
+
+    /// Starts a log from the engine's current state, parameters and driver
+    static SessionRecorder create(Path path, SimulationEngine engine, FixedStepLoop loop) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        SessionRecorder recorder = new SessionRecorder(path, out, loop);
+        try {
+            out.writeInt(SessionFile.MAGIC);
+            out.writeShort(SessionFile.VERSION);
+            out.writeInt(ResultCache.MODEL_REVISION);
+            recorder.writeSnapshot(engine);
+            for (String key : SimulationParameters.KEYS) recorder.set(key, engine.params.get(key));
+            DriverInput driver = loop.driver();
+            recorder.cycle(driver instanceof DriveCycleDriver cycleDriver ? cycleDriver.cycle : null);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        return recorder;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /// Input events written so far, not counting steps
+    long events() {
+        return events;
+    }
+
+    @Override
+    public void onStep(SimulationEngine engine) {
+        double dt = loop.stepSize();
+        if (dt != pendingDt) {
+            flushSteps();
+            pendingDt = dt;
+        }
+        pendingSteps++;
+    }
+
+    void set(String key, String value) {
+        flushSteps();
+        try {
+            out.writeByte(SessionFile.SET);
+            out.writeUTF(key);
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        events++;
+    }
+
+    void reset() {
+        flushSteps();
+        try {
+            out.writeByte(SessionFile.RESET);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        events++;
+    }
+
+    /// The engine was put back into a checkpoint's state
+    void restore(SimulationEngine engine) {
+        flushSteps();
+        try {
+            out.writeByte(SessionFile.RESTORE);
+            writeSnapshot(engine);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        events++;
+    }
+
+    /// The drive cycle now driving the engine, or null for the manual acceleration input
+    void cycle(DriveCycle cycle) {
+        flushSteps();
+        try {
+            out.writeByte(SessionFile.CYCLE);
+            out.writeUTF(cycle == null ? "" : cycle.name);
+            int rows = cycle == null ? 0 : cycle.time.length;
+            out.writeInt(rows);
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(cycle.time[i]);
+                out.writeDouble(cycle.speed[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        events++;
+    }
+
+    /// Ends the log with the engine's state, which a replay must reproduce exactly
+    void finish(SimulationEngine engine) throws IOException {
+        flushSteps();
+        out.writeByte(SessionFile.END);
+        writeSnapshot(engine);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void flushSteps() {
+        if (pendingSteps == 0) return;
+        try {
+            out.writeByte(SessionFile.STEPS);
+            out.writeLong(pendingSteps);
+            out.writeDouble(pendingDt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingSteps = 0;
+    }
+
+    private void writeSnapshot(SimulationEngine engine) throws IOException {
+        engine.snapshot(snapshot);
+        for (double value : snapshot) out.writeDouble(value);
+    }
+}
@@ -0,0 +1,152 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/// Re-executes a session log headless, as fast as the CPU allows: the same inputs, applied between the
+/// same steps of the same dt, through the same step code as the live loop, so the engine ends in the
+/// bit-identical state the log recorded at its END.
+/// Usage: SessionReplay <session.evs> [--out summary.txt]
+public final class SessionReplay {
+    private SessionReplay() {}
+
+    /// Outcome of a replay; expected is null when the log has no END, e.g. after a crash
+    static final class Result {
+        final SimulationEngine engine;
+        final long steps;
+        final long events;
+        final long wallNanos;
+        final int modelRevision;
+        final double[] expected;
+
+        Result(SimulationEngine engine, long steps, long events, long wallNanos, int modelRevision, double[] expected) {
+            this.engine = engine;
+            this.steps = steps;
+            this.events = events;
+            this.wallNanos = wallNanos;
+            this.modelRevision = modelRevision;
+            this.expected = expected;
+        }
+
+        /// Snapshot fields whose bits differ from the recorded final state; empty when the replay matches
+        List<Integer> mismatches() {
+            List<Integer> fields = new ArrayList<>();
+            if (expected == null) return fields;
+            double[] actual = new double[SimulationEngine.SNAPSHOT_SIZE];
+            engine.snapshot(actual);
+            for (int i = 0; i < actual.length; i++) {
+                if (Double.doubleToRawLongBits(actual[i]) != Double.doubleToRawLongBits(expected[i])) fields.add(i);
+            }
+            return fields;
+        }
+
+        /// SHA-256 of the replayed final snapshot, short enough to quote in a bug report
+        String checksum() {
+            double[] actual = new double[SimulationEngine.SNAPSHOT_SIZE];
+            engine.snapshot(actual);
+            ByteBuffer bytes = ByteBuffer.allocate(actual.length * Double.BYTES);
+            for (double value : actual) bytes.putDouble(value);
+            return HexFormat.of().formatHex(ResultCache.sha256().digest(bytes.array()), 0, 8);
+        }
+
+        RunSummary summary() {
+            return new RunSummary(engine.soc, engine.distance, engine.energyConsumed, engine.energyEfficiency,
+                    engine.peakBatteryTemp, engine.time, steps, 0, steps, wallNanos, false);
+        }
+    }
+
+    static Result replay(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SessionFile.MAGIC) throw new IOException(file + ": not a session log");
+            short version = in.readShort();
+            if (version < 1 || version > SessionFile.VERSION) throw new IOException(file + ": unsupported session log version " + version);
+            int revision = in.readInt();
+            SimulationEngine engine = new SimulationEngine(new SimulationParameters());
+            engine.restore(readSnapshot(in));
+            DriverInput driver = null;
+            double[] expected = null;
+            long steps = 0;
+            long events = 0;
+            long start = System.nanoTime();
+            int tag;
+            while (expected == null && (tag = in.read()) >= 0) {
+                switch (tag) {
+                    case SessionFile.SET -> SessionFile.apply(engine, in.readUTF(), in.readUTF());
+                    case SessionFile.STEPS -> {
+                        long count = in.readLong();
+                        double dt = in.readDouble();
+                        for (long i = 0; i < count; i++) {
+                            Integrator.command(engine, driver, dt);
+                            engine.step(dt);
+                        }
+                        steps += count;
+                    }
+                    case SessionFile.RESET -> engine.reset();
+                    case SessionFile.RESTORE -> engine.restore(readSnapshot(in));
+                    case SessionFile.CYCLE -> driver = readCycle(in);
+                    case SessionFile.END -> expected = readSnapshot(in);
+                    default -> throw new IOException(file + ": unknown event tag " + tag);
+                }
+                if (tag != SessionFile.STEPS) events++;
+            }
+            return new Result(engine, steps, events, System.nanoTime() - start, revision, expected);
+        } catch (EOFException e) {
+            throw new IOException(file + ": session log is truncated inside an event", e);
+        }
+    }
+
+    private static DriverInput readCycle(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        int rows = in.readInt();
+        if (rows == 0) return null;
+        double[] time = new double[rows];
+        double[] speed = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            time[i] = in.readDouble();
+            speed[i] = in.readDouble();
+        }
+        return new DriveCycleDriver(new DriveCycle(name.isEmpty() ? "cycle" : name, time, speed));
+    }
+
+    private static double[] readSnapshot(DataInputStream in) throws IOException {
+        double[] snapshot = new double[SimulationEngine.SNAPSHOT_SIZE];
+        for (int i = 0; i < snapshot.length; i++) snapshot[i] = in.readDouble();
+        return snapshot;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("--out"))) {
+            System.err.println("Usage: SessionReplay <session.evs> [--out summary.txt]");
+            System.exit(2);
+        }
+        Result result = replay(Path.of(args[0]));
+        StringBuilder report = new StringBuilder(result.summary().format());
+        report.append("Input events: ").append(result.events).append(System.lineSeparator());
+        report.append("Checksum: ").append(result.checksum()).append(System.lineSeparator());
+        if (result.modelRevision != ResultCache.MODEL_REVISION) {
+            report.append("Recorded with model revision ").append(result.modelRevision).append(", replayed with ")
+                    .append(ResultCache.MODEL_REVISION).append(System.lineSeparator());
+        }
+        List<Integer> mismatches = result.mismatches();
+        if (result.expected == null) {
+            report.append("No END record: the session did not close cleanly, so the replay cannot be verified");
+        } else if (mismatches.isEmpty()) {
+            report.append("Replay matches the recorded final state bit for bit");
+        } else {
+            report.append("Replay differs from the recorded final state in snapshot fields ").append(mismatches);
+        }
+        report.append(System.lineSeparator());
+        if (args.length == 3) Files.writeString(Path.of(args[2]), report, StandardCharsets.UTF_8);
+        System.out.print(report);
+        if (!mismatches.isEmpty()) System.exit(1);
+    }
+}
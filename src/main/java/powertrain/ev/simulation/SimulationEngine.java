@@ -0,0 +1,389 @@
+package powertrain.ev.simulation;
+
+/// Headless vehicle, motor, battery and thermal model. All state lives in primitive fields and a step
+/// allocates nothing, so it can be driven by the JavaFX view or by batch workloads without a display.
+/// With cellsParallel set the battery is a CellPack instead of the lumped circuit and thermal mass:
+/// the pack's Thevenin equivalent sets the current, and soc, batteryTemp and the RC voltages report the
+/// pack's capacity-weighted SoC, mean cell temperature and summed polarisation. The adaptive
+/// integrators advance the pack once per accepted step at the current reached.
+final class SimulationEngine {
+    static final double WHEEL_RADIUS = 0.4; // m
+    final SimulationParameters params;
+    /// Driver input
+    double acceleration; // m/s², commanded
+    /// Vehicle and motor state
+    double vehicleSpeed; // km/h
+    double motorRpm; // RPM
+    double motorTorque; // Nm
+    double motorEfficiency; // 0-1, looked up in the efficiency map every step
+    double distance; // km
+    /// Battery state
+    double energyConsumed; // kWh at the pack terminals
+    double soc = 100; // %, by charge counted through the pack
+    double packVoltage; // V at the terminals
+    double packCurrent; // A, positive when discharging
+    double rcVoltage1; // V across the fast RC pair
+    double rcVoltage2; // V across the slow RC pair
+    double batteryTemp; // °C
+    double energyEfficiency; // Wh/km
+    /// Run statistics
+    double time; // simulated s
+    double peakBatteryTemp; // °C
+    long steps; // accepted
+    long rejectedSteps; // by adaptive integrators
+    long evaluations; // of the model, one per Euler step
+    /// RC decay factors exp(-dt/τ), recomputed only when the step size changes
+    private double cachedDt = Double.NaN;
+    private double decay1;
+    private double decay2;
+    /// Pack scaling, recomputed only when the nominal voltage or capacity changes
+    private double scaledVoltage = Double.NaN;
+    private double scaledCapacity = Double.NaN;
+    private double seriesCells;
+    private double socPerAmpSecond; // % per A·s
+    private double resistance25; // Ω, R0 at 25 °C
+    /// Cell-level pack, null with the lumped battery; rebuilt at the current SoC and temperature when
+    /// its parameters change, and left out of the snapshot since its size varies (see copyCells)
+    private CellPack cells;
+
+    SimulationEngine(SimulationParameters params) {
+        this.params = params;
+        motorEfficiency = params.efficiencyMap.efficiency(0, 0);
+        packVoltage = BatteryModel.openCircuitVoltage(params, soc);
+        batteryTemp = params.ambientTemp;
+        peakBatteryTemp = batteryTemp;
+    }
+
+    void reset() {
+        vehicleSpeed = 0;
+        motorRpm = 0;
+        motorTorque = 0;
+        motorEfficiency = params.efficiencyMap.efficiency(0, 0);
+        distance = 0;
+        energyConsumed = 0;
+        soc = 100;
+        packVoltage = BatteryModel.openCircuitVoltage(params, soc);
+        packCurrent = 0;
+        rcVoltage1 = 0;
+        rcVoltage2 = 0;
+        batteryTemp = params.ambientTemp;
+        energyEfficiency = 0;
+        time = 0;
+        peakBatteryTemp = batteryTemp;
+        cells = null;
+        steps = 0;
+        rejectedSteps = 0;
+        evaluations = 0;
+    }
+
+    /// Every field a step reads or publishes, so an engine restored from a snapshot continues bit for bit.
+    /// Counters are stored as doubles, exact up to 2^53.
+    static final int SNAPSHOT_SIZE = 19;
+
+    void snapshot(double[] out) {
+        out[0] = acceleration;
+        out[1] = vehicleSpeed;
+        out[2] = motorRpm;
+        out[3] = motorTorque;
+        out[4] = motorEfficiency;
+        out[5] = distance;
+        out[6] = energyConsumed;
+        out[7] = soc;
+        out[8] = packVoltage;
+        out[9] = packCurrent;
+        out[10] = rcVoltage1;
+        out[11] = rcVoltage2;
+        out[12] = batteryTemp;
+        out[13] = energyEfficiency;
+        out[14] = time;
+        out[15] = peakBatteryTemp;
+        out[16] = steps;
+        out[17] = rejectedSteps;
+        out[18] = evaluations;
+    }
+
+    /// The per-dt and pack caches are rebuilt on the next step, from the same inputs. A cell-level pack
+    /// starts over uniform at the restored SoC and temperature unless restoreCells follows.
+    void restore(double[] in) {
+        acceleration = in[0];
+        vehicleSpeed = in[1];
+        motorRpm = in[2];
+        motorTorque = in[3];
+        motorEfficiency = in[4];
+        distance = in[5];
+        energyConsumed = in[6];
+        soc = in[7];
+        packVoltage = in[8];
+        packCurrent = in[9];
+        rcVoltage1 = in[10];
+        rcVoltage2 = in[11];
+        batteryTemp = in[12];
+        energyEfficiency = in[13];
+        time = in[14];
+        peakBatteryTemp = in[15];
+        steps = (long) in[16];
+        rejectedSteps = (long) in[17];
+        evaluations = (long) in[18];
+        cachedDt = Double.NaN;
+        scaledVoltage = Double.NaN;
+        cells = null;
+    }
+
+    /// Copy of the cell-level pack's state, null with the lumped battery
+    CellPack copyCells() {
+        return cells == null ? null : cells.copy();
+    }
+
+    /// After restore: continues from a copy of cells instead of a uniform pack
+    void restoreCells(CellPack cells) {
+        this.cells = cells == null ? null : cells.copy();
+    }
+
+    void step(double dt) {
+        SimulationParameters p = params;
+        /// Vehicle Dynamics
+        double accel = clamp(acceleration, -p.maxAccel, p.maxAccel);
+        double speedMs = vehicleSpeed / 3.6;
+        double force = p.vehicleMass * accel;
+        double drag = 0.5 * p.dragCoefficient * p.frontalArea * p.airDensity * speedMs * speedMs;
+        double rolling = p.rollingResistance * p.vehicleMass * 9.81;
+        double totalForce = force - drag - rolling;
+        speedMs += (totalForce / p.vehicleMass) * dt;
+        vehicleSpeed = clamp(speedMs * 3.6, 0, 180);
+        /// Motor
+        motorRpm = vehicleSpeed * p.gearRatio / (0.377 * WHEEL_RADIUS); // 0.377 = 2π·60/1000, km/h to wheel RPM·m
+        motorEfficiency = p.efficiencyMap.efficiency(force * WHEEL_RADIUS / p.gearRatio, motorRpm);
+        double motorSpeed = motorRpm / 60 * 2 * Math.PI; // rad/s
+        motorTorque = p.motorPower * p.powerFactor * 1000 / ((motorSpeed > 0.1 ? motorSpeed : 0.1) * motorEfficiency);
+        distance += vehicleSpeed / 3600 * dt;
+        /// Battery and Energy
+        double powerUse = powerUse(p, accel, motorEfficiency, batteryTemp);
+        rescaleBattery();
+        if (cells != null) {
+            stepCells(packPower(p, accel, powerUse, soc) * 1000, dt);
+        } else {
+            stepBattery(packPower(p, accel, powerUse, soc) * 1000, dt);
+            /// Battery Temperature
+            batteryTemp += thermalRate(p, powerUse, batteryTemp) * dt;
+            batteryTemp = clamp(batteryTemp, 10, 70);
+        }
+        updatePeakTemp();
+        /// Energy Efficiency
+        energyEfficiency = distance > 0 ? (energyConsumed * 1000) / distance : 0;
+        time += dt;
+        steps++;
+        evaluations++;
+    }
+
+    /// Electrical power (kW) the drive demands
+    private static double powerUse(SimulationParameters p, double accel, double motorEfficiency, double batteryTemp) {
+        double tempEfficiency = 1.0 - (batteryTemp > 40 ? (batteryTemp - 40) * 0.01 : 0);
+        return p.motorPower * p.powerFactor * (0.5 + 0.5 * Math.abs(accel)) / (motorEfficiency * tempEfficiency);
+    }
+
+    /// Power (kW) at the pack terminals: the demand less the regenerative braking credit
+    private static double packPower(SimulationParameters p, double accel, double powerUse, double soc) {
+        double packPower = powerUse;
+        if (accel < 0 && p.regenBraking && soc < 95) {
+            double socFactor = soc > 80 ? 0.5 : 1.0;
+            packPower -= p.regenEfficiency * powerUse * 0.5 * socFactor;
+        }
+        return packPower;
+    }
+
+    /// Battery temperature rate (°C/s)
+    private static double thermalRate(SimulationParameters p, double powerUse, double batteryTemp) {
+        double heatInput = (powerUse / p.motorPower) * 0.1;
+        double cooling = 0.05 * (batteryTemp - p.ambientTemp);
+        return (heatInput - cooling) / p.thermalMass;
+    }
+
+    /// Draws power (W) from the equivalent circuit for one step: solves for the current at the terminals,
+    /// then advances both RC pairs with the exact exponential solution for a current held over dt
+    private void stepBattery(double power, double dt) {
+        SimulationParameters p = params;
+        if (dt != cachedDt) {
+            cachedDt = dt;
+            decay1 = Math.exp(-dt / BatteryModel.TAU1);
+            decay2 = Math.exp(-dt / BatteryModel.TAU2);
+        }
+        double r0 = resistance25 * BatteryModel.resistanceFactor(batteryTemp);
+        double source = seriesCells * BatteryModel.cellOcv(soc) - rcVoltage1 - rcVoltage2;
+        double current = BatteryModel.current(power, source, r0);
+        packCurrent = current;
+        packVoltage = source - current * r0;
+        rcVoltage1 = rcVoltage1 * decay1 + BatteryModel.R1_SHARE * r0 * current * (1 - decay1);
+        rcVoltage2 = rcVoltage2 * decay2 + BatteryModel.R2_SHARE * r0 * current * (1 - decay2);
+        energyConsumed += packVoltage * current * dt * (1 / 3.6e6);
+        soc -= current * dt * socPerAmpSecond;
+        soc = clamp(soc, 0, 100);
+    }
+
+    /// Draws power (W) from the cell-level pack for one step at the current its equivalent circuit
+    /// delivers it with
+    private void stepCells(double power, double dt) {
+        double current = BatteryModel.current(power, cells.source, cells.resistance);
+        packCurrent = current;
+        packVoltage = cells.source - current * cells.resistance;
+        energyConsumed += packVoltage * current * dt * (1 / 3.6e6);
+        cells.advance(current, dt, params.ambientTemp);
+        loadCells();
+    }
+
+    /// Reports the pack through the lumped battery state
+    private void loadCells() {
+        soc = cells.socMean;
+        batteryTemp = cells.tempMean;
+        rcVoltage1 = cells.rc1Total;
+        rcVoltage2 = cells.rc2Total;
+    }
+
+    /// The peak tracks the hottest cell of a cell-level pack
+    private void updatePeakTemp() {
+        double hottest = cells != null ? cells.tempMax : batteryTemp;
+        if (hottest > peakBatteryTemp) peakBatteryTemp = hottest;
+    }
+
+    private void rescaleBattery() {
+        SimulationParameters p = params;
+        if (p.batteryVoltage != scaledVoltage || p.batteryCapacity != scaledCapacity) {
+            scaledVoltage = p.batteryVoltage;
+            scaledCapacity = p.batteryCapacity;
+            seriesCells = BatteryModel.seriesCells(p);
+            socPerAmpSecond = 100 / (3600 * BatteryModel.capacityAh(p));
+            resistance25 = BatteryModel.seriesResistance(p);
+        }
+        if (p.cellsParallel == 0) {
+            cells = null;
+        } else if (cells == null || !cells.matches(p)) {
+            cells = new CellPack(p, soc, batteryTemp);
+        }
+    }
+
+    /// Continuous form of the model for the higher-order integrators. step() is the explicit Euler
+    /// scheme the live view uses; these let an Integrator evaluate the same physics at trial states.
+    static final int S_SPEED = 0; // m/s
+    static final int S_DISTANCE = 1; // km
+    static final int S_SOC = 2; // %
+    static final int S_ENERGY = 3; // kWh
+    static final int S_TEMP = 4; // °C
+    static final int S_RC1 = 5; // V
+    static final int S_RC2 = 6; // V
+    static final int STATE_SIZE = 7;
+    private static final double MAX_SPEED = 180 / 3.6; // m/s
+
+    void saveState(double[] y) {
+        y[S_SPEED] = vehicleSpeed / 3.6;
+        y[S_DISTANCE] = distance;
+        y[S_SOC] = soc;
+        y[S_ENERGY] = energyConsumed;
+        y[S_TEMP] = batteryTemp;
+        y[S_RC1] = rcVoltage1;
+        y[S_RC2] = rcVoltage2;
+    }
+
+    /// Time derivatives of the state y at the commanded acceleration. Saturated states (speed, SoC and
+    /// temperature at their limits) get a zero rate instead of being pushed past the limit.
+    void derivatives(double[] y, double[] dy) {
+        dynamics(y, dy, false);
+    }
+
+    /// Accepts a state reached after h seconds and recomputes the outputs that derive from it
+    void loadState(double[] y, double h) {
+        vehicleSpeed = clamp(y[S_SPEED] * 3.6, 0, 180);
+        distance = y[S_DISTANCE];
+        soc = clamp(y[S_SOC], 0, 100);
+        energyConsumed = y[S_ENERGY];
+        batteryTemp = clamp(y[S_TEMP], 10, 70);
+        rcVoltage1 = y[S_RC1];
+        rcVoltage2 = y[S_RC2];
+        saveState(y); // the clamped state is what the outputs and the next step start from
+        dynamics(y, null, true);
+        if (cells != null) {
+            cells.advance(packCurrent, h, params.ambientTemp);
+            loadCells();
+            saveState(y);
+        }
+        updatePeakTemp();
+        energyEfficiency = distance > 0 ? (energyConsumed * 1000) / distance : 0;
+        time += h;
+        steps++;
+    }
+
+    private void dynamics(double[] y, double[] dy, boolean publish) {
+        SimulationParameters p = params;
+        rescaleBattery();
+        double accel = clamp(acceleration, -p.maxAccel, p.maxAccel);
+        double speedMs = y[S_SPEED];
+        double force = p.vehicleMass * accel;
+        double drag = 0.5 * p.dragCoefficient * p.frontalArea * p.airDensity * speedMs * speedMs;
+        double rolling = p.rollingResistance * p.vehicleMass * 9.81;
+        double rpm = speedMs * 3.6 * p.gearRatio / (0.377 * WHEEL_RADIUS);
+        double efficiency = p.efficiencyMap.efficiency(force * WHEEL_RADIUS / p.gearRatio, rpm);
+        double charge = y[S_SOC];
+        double temp = y[S_TEMP];
+        double powerUse = powerUse(p, accel, efficiency, temp);
+        double r0;
+        double source;
+        if (cells != null) {
+            r0 = cells.resistance; // the pack as it was at the start of the step, RC pairs included
+            source = cells.source;
+        } else {
+            r0 = resistance25 * BatteryModel.resistanceFactor(temp);
+            source = seriesCells * BatteryModel.cellOcv(charge) - y[S_RC1] - y[S_RC2];
+        }
+        double current = BatteryModel.current(packPower(p, accel, powerUse, charge) * 1000, source, r0);
+        evaluations++;
+        if (publish) {
+            motorRpm = rpm;
+            motorEfficiency = efficiency;
+            double motorSpeed = rpm / 60 * 2 * Math.PI; // rad/s
+            motorTorque = p.motorPower * p.powerFactor * 1000 / ((motorSpeed > 0.1 ? motorSpeed : 0.1) * efficiency);
+            packCurrent = current;
+            packVoltage = source - current * r0;
+            return;
+        }
+        double dv = (force - drag - rolling) / p.vehicleMass;
+        if ((speedMs <= 0 && dv < 0) || (speedMs >= MAX_SPEED && dv > 0)) dv = 0;
+        double dSoc = -current * socPerAmpSecond;
+        if ((charge <= 0 && dSoc < 0) || (charge >= 100 && dSoc > 0)) dSoc = 0;
+        double dTemp = thermalRate(p, powerUse, temp);
+        if ((temp <= 10 && dTemp < 0) || (temp >= 70 && dTemp > 0)) dTemp = 0;
+        dy[S_SPEED] = dv;
+        dy[S_DISTANCE] = speedMs * (3.6 / 3600);
+        dy[S_SOC] = dSoc;
+        dy[S_ENERGY] = (source - current * r0) * current * (1 / 3.6e6);
+        dy[S_TEMP] = dTemp;
+        dy[S_RC1] = (BatteryModel.R1_SHARE * r0 * current - y[S_RC1]) * (1 / BatteryModel.TAU1);
+        dy[S_RC2] = (BatteryModel.R2_SHARE * r0 * current - y[S_RC2]) * (1 / BatteryModel.TAU2);
+        if (cells != null) {
+            /// The cells move only in loadState; the SoC rate stays the lumped estimate for step-size control
+            dy[S_TEMP] = 0;
+            dy[S_RC1] = 0;
+            dy[S_RC2] = 0;
+        }
+    }
+
+    /// Plain comparisons: Math.min/max on doubles pay for NaN and -0.0 handling on every call, which
+    /// showed up in the step loop. Returns lo for -0.0 when lo is 0, so clamped outputs never print "-0".
+    private static double clamp(double value, double lo, double hi) {
+        return value <= lo ? lo : value >= hi ? hi : value;
+    }
+
+    /// Writes the current outputs into out, indexed by Channels
+    void sample(double[] out) {
+        out[Channels.VOLTAGE] = packVoltage;
+        out[Channels.CURRENT] = packCurrent;
+        out[Channels.SPEED] = vehicleSpeed;
+        out[Channels.TEMP] = batteryTemp;
+        out[Channels.SOC] = soc;
+        out[Channels.TORQUE] = motorTorque;
+        out[Channels.EFFICIENCY] = energyEfficiency;
+        out[Channels.RPM] = motorRpm;
+        out[Channels.DISTANCE] = distance;
+        out[Channels.ENERGY] = energyConsumed;
+        out[Channels.CELL_TEMP_MIN] = cells != null ? cells.tempMin : batteryTemp;
+        out[Channels.CELL_TEMP_MAX] = cells != null ? cells.tempMax : batteryTemp;
+        out[Channels.SOC_SPREAD] = cells != null ? cells.socMax - cells.socMin : 0;
+    }
+}
@@ -0,0 +1,178 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/// Physics inputs of the powertrain model held as plain primitives, so the engine never touches JavaFX properties
+final class SimulationParameters {
+    /// Drive mode parameters: {maxAccel (m/s²), powerFactor}
+    static final Map<String, double[]> DRIVE_MODES;
+    static {
+        Map<String, double[]> modes = new LinkedHashMap<>();
+        modes.put("Eco", new double[]{0.5, 0.7});
+        modes.put("Normal", new double[]{1.0, 1.0});
+        modes.put("Sport", new double[]{1.5, 1.3});
+        DRIVE_MODES = Collections.unmodifiableMap(modes);
+    }
+
+    /// Battery
+    double batteryVoltage = 400; // V
+    double batteryCapacity = 60; // kWh
+    double thermalMass = 1000; // J/°C
+    double ambientTemp = 25; // °C, the pack starts at it and is cooled toward it
+    int cellsParallel = 0; // cells per series group of the cell-level pack model, 0 for the lumped battery
+    double cellSpread = 2; // %, standard deviation of cell capacity and resistance in the cell-level model
+    /// Motor
+    double motorPower = 150; // kW
+    double gearRatio = 8.0;
+    EfficiencyMap efficiencyMap = EfficiencyMap.DEFAULT; // shared, immutable
+    /// Vehicle
+    double vehicleMass = 1500; // kg
+    double dragCoefficient = 0.3;
+    double frontalArea = 2.5; // m²
+    double airDensity = 1.225; // kg/m³
+    double rollingResistance = 0.01;
+    double regenEfficiency = 0.5; // 0.0-1.0
+    boolean regenBraking = true;
+    /// Drive mode, resolved once so the step loop never does a map lookup
+    String driveMode = "Normal";
+    double maxAccel = 1.0; // m/s²
+    double powerFactor = 1.0;
+    static final int MAX_CELLS_PARALLEL = 16;
+
+    void setDriveMode(String mode) {
+        double[] modeParams = DRIVE_MODES.get(mode);
+        if (modeParams == null) {
+            throw new IllegalArgumentException("Unknown drive mode: " + mode);
+        }
+        driveMode = mode;
+        maxAccel = modeParams[0];
+        powerFactor = modeParams[1];
+    }
+
+    SimulationParameters copy() {
+        SimulationParameters copy = new SimulationParameters();
+        copy.batteryVoltage = batteryVoltage;
+        copy.batteryCapacity = batteryCapacity;
+        copy.thermalMass = thermalMass;
+        copy.ambientTemp = ambientTemp;
+        copy.cellsParallel = cellsParallel;
+        copy.cellSpread = cellSpread;
+        copy.motorPower = motorPower;
+        copy.gearRatio = gearRatio;
+        copy.efficiencyMap = efficiencyMap;
+        copy.vehicleMass = vehicleMass;
+        copy.dragCoefficient = dragCoefficient;
+        copy.frontalArea = frontalArea;
+        copy.airDensity = airDensity;
+        copy.rollingResistance = rollingResistance;
+        copy.regenEfficiency = regenEfficiency;
+        copy.regenBraking = regenBraking;
+        copy.driveMode = driveMode;
+        copy.maxAccel = maxAccel;
+        copy.powerFactor = powerFactor;
+        return copy;
+    }
+
+    /// Reads a properties file whose keys match the field names, e.g. vehicleMass=1800, driveMode=Eco or
+    /// efficiencyMap=maps/motor.csv
+    static Properties readProperties(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        return props;
+    }
+
+    /// Keys understood by set and apply, in field order
+    static final String[] KEYS = {
+            "batteryVoltage", "batteryCapacity", "thermalMass", "ambientTemp", "cellsParallel", "cellSpread", "motorPower",
+            "gearRatio", "vehicleMass", "dragCoefficient", "frontalArea", "airDensity", "rollingResistance", "regenEfficiency",
+            "regenBraking", "driveMode", "efficiencyMap"
+    };
+
+    void apply(Properties props) {
+        for (String key : KEYS) {
+            String value = props.getProperty(key);
+            if (value != null) set(key, value);
+        }
+    }
+
+    /// Sets one parameter by key from its text form
+    void set(String key, String value) {
+        String text = value.trim();
+        switch (key) {
+            case "batteryVoltage" -> batteryVoltage = parse(key, text);
+            case "batteryCapacity" -> batteryCapacity = parse(key, text);
+            case "thermalMass" -> thermalMass = parse(key, text);
+            case "ambientTemp" -> ambientTemp = parse(key, text);
+            case "cellsParallel" -> cellsParallel = count(key, text, MAX_CELLS_PARALLEL);
+            case "cellSpread" -> cellSpread = parse(key, text);
+            case "motorPower" -> motorPower = parse(key, text);
+            case "gearRatio" -> gearRatio = parse(key, text);
+            case "vehicleMass" -> vehicleMass = parse(key, text);
+            case "dragCoefficient" -> dragCoefficient = parse(key, text);
+            case "frontalArea" -> frontalArea = parse(key, text);
+            case "airDensity" -> airDensity = parse(key, text);
+            case "rollingResistance" -> rollingResistance = parse(key, text);
+            case "regenEfficiency" -> regenEfficiency = parse(key, text);
+            case "regenBraking" -> regenBraking = Boolean.parseBoolean(text);
+            case "driveMode" -> setDriveMode(text);
+            case "efficiencyMap" -> efficiencyMap = EfficiencyMap.resolve(text);
+            default -> throw new IllegalArgumentException("Unknown parameter: " + key);
+        }
+    }
+
+    /// Text form of one parameter that set reads back to the identical value
+    String get(String key) {
+        return switch (key) {
+            case "batteryVoltage" -> Double.toString(batteryVoltage);
+            case "batteryCapacity" -> Double.toString(batteryCapacity);
+            case "thermalMass" -> Double.toString(thermalMass);
+            case "ambientTemp" -> Double.toString(ambientTemp);
+            case "cellsParallel" -> Integer.toString(cellsParallel);
+            case "cellSpread" -> Double.toString(cellSpread);
+            case "motorPower" -> Double.toString(motorPower);
+            case "gearRatio" -> Double.toString(gearRatio);
+            case "vehicleMass" -> Double.toString(vehicleMass);
+            case "dragCoefficient" -> Double.toString(dragCoefficient);
+            case "frontalArea" -> Double.toString(frontalArea);
+            case "airDensity" -> Double.toString(airDensity);
+            case "rollingResistance" -> Double.toString(rollingResistance);
+            case "regenEfficiency" -> Double.toString(regenEfficiency);
+            case "regenBraking" -> Boolean.toString(regenBraking);
+            case "driveMode" -> driveMode;
+            case "efficiencyMap" -> efficiencyMap == EfficiencyMap.DEFAULT ? "default" : efficiencyMap.name;
+            default -> throw new IllegalArgumentException("Unknown parameter: " + key);
+        };
+    }
+
+    static double number(Properties props, String key, double fallback) {
+        String value = props.getProperty(key);
+        return value == null ? fallback : parse(key, value.trim());
+    }
+
+    /// A whole number from 0 to max, which may be written as a double (e.g. 4.0)
+    private static int count(String key, String value, int max) {
+        double number = parse(key, value);
+        if (number != Math.rint(number) || number < 0 || number > max) {
+            throw new IllegalArgumentException(key + " must be a whole number from 0 to " + max + ": " + value);
+        }
+        return (int) number;
+    }
+
+    private static double parse(String key, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package powertrain.ev.simulation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/// Runs a FixedStepLoop on its own thread, paced to wall time, so a slow frame on the FX thread no
+/// longer stalls the physics and a burst of physics no longer delays a frame. Every tick advances the
+/// loop by the elapsed wall time and pushes the interpolated state into a SampleQueue, which the
+/// renderer drains each pulse, and into a StateBuffer for the status readouts.
+/// The engine, its parameters and the loop belong to this thread once it is launched: other threads
+/// change them only through execute, whose commands run between ticks in submission order.
+final class SimulationThread implements Executor {
+    enum State { STOPPED, RUNNING, PAUSED, TERMINATED }
+
+    static final int QUEUE_CAPACITY = 1024; // samples, about 17 s at 60 Hz before the renderer drops any
+    private final FixedStepLoop loop;
+    private final PerformanceMonitor monitor;
+    private final long tickNanos;
+    private final Thread thread;
+    private final AtomicReference<State> state = new AtomicReference<>(State.STOPPED);
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private volatile long shutdownMillis; // how long shutdown, and so execute after it, waits for the thread
+    private final double[] sample = new double[Channels.COUNT];
+    final SampleQueue samples = new SampleQueue(QUEUE_CAPACITY, Channels.COUNT);
+    final StateBuffer latest = new StateBuffer(Channels.COUNT);
+
+    private SimulationThread(FixedStepLoop loop, double sampleRateHz, PerformanceMonitor monitor) {
+        if (!(sampleRateHz > 0)) throw new IllegalArgumentException("Sample rate must be positive: " + sampleRateHz);
+        this.loop = loop;
+        this.monitor = monitor;
+        this.tickNanos = (long) (1e9 / sampleRateHz);
+        this.thread = new Thread(this::runLoop, "ev-simulation");
+        thread.setDaemon(true);
+    }
+
+    /// Starts the thread in the STOPPED state, publishing samples at sampleRateHz once started and
+    /// reporting each tick to monitor
+    static SimulationThread launch(FixedStepLoop loop, double sampleRateHz, PerformanceMonitor monitor) {
+        SimulationThread simulation = new SimulationThread(loop, sampleRateHz, monitor);
+        simulation.thread.start();
+        return simulation;
+    }
+
+    State state() {
+        return state.get();
+    }
+
+    long threadId() {
+        return thread.getId();
+    }
+
+    /// Ticks whose elapsed time was truncated to FixedStepLoop.MAX_FRAME_TIME
+    long clampedTicks() {
+        return loop.clampedFrames();
+    }
+
+    boolean start() {
+        return state.compareAndSet(State.STOPPED, State.RUNNING);
+    }
+
+    boolean pause() {
+        return state.compareAndSet(State.RUNNING, State.PAUSED);
+    }
+
+    boolean resume() {
+        return state.compareAndSet(State.PAUSED, State.RUNNING);
+    }
+
+    boolean stop() {
+        return state.compareAndSet(State.RUNNING, State.STOPPED) || state.compareAndSet(State.PAUSED, State.STOPPED);
+    }
+
+    /// Queues a command for the simulation thread. Once shutdown has begun the caller instead waits for
+    /// the thread to end, as long as shutdown waits, and runs whatever is still queued in submission
+    /// order, so a command submitted during shutdown is neither lost nor run beside a tick. A command
+    /// still queued when the thread outlives that wait is rejected.
+    @Override
+    public void execute(Runnable command) {
+        commands.add(command);
+        if (state.get() != State.TERMINATED || Thread.currentThread() == thread) return;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownMillis);
+        boolean interrupted = false;
+        long left;
+        while (thread.isAlive() && (left = deadline - System.nanoTime()) > 0) {
+            try {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (thread.isAlive()) {
+            if (commands.remove(command)) {
+                throw new RejectedExecutionException("Simulation thread did not stop within " + shutdownMillis + " ms");
+            }
+            return; // the thread's last drain took it
+        }
+        synchronized (commands) {
+            runCommands();
+        }
+    }
+
+    /// Ends the thread after its current tick and waits for it; pending commands still run
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        shutdownMillis = unit.toMillis(timeout);
+        state.set(State.TERMINATED);
+        LockSupport.unpark(thread);
+        thread.join(unit.toMillis(timeout));
+    }
+
+    private void runLoop() {
+        long last = System.nanoTime();
+        long next = last;
+        while (true) {
+            State current = state.get();
+            if (current == State.TERMINATED) break;
+            runCommands();
+            long now = System.nanoTime();
+            if (current == State.RUNNING) {
+                int steps = loop.advance((now - last) / 1e9);
+                loop.interpolate(sample);
+                latest.publish(sample);
+                samples.offer(sample);
+                long end = System.nanoTime();
+                monitor.recordTick(end - now, steps * loop.stepSize(), now - last);
+            }
+            last = now; // stopped or paused wall time is never replayed
+            next += tickNanos;
+            long end = System.nanoTime();
+            if (next < end) next = end; // fell behind; resume pacing from here
+            LockSupport.parkNanos(this, next - end);
+        }
+        runCommands();
+    }
+
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                report(e); // keep stepping
+            }
+        }
+    }
+
+    /// Hands a failed command to the thread's handler; once the thread has ended it has none, and
+    /// commands run on the caller go to the default handler or standard error
+    private void report(RuntimeException e) {
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        if (handler == null) handler = Thread.getDefaultUncaughtExceptionHandler();
+        if (handler != null) {
+            handler.uncaughtException(thread, e);
+        } else {
+            e.printStackTrace();
+        }
+    }
+}
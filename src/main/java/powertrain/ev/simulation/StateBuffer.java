@@ -0,0 +1,35 @@
+package powertrain.ev.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Hands the latest display state from the simulation to the UI without locks or allocation. Three
+/// buffers rotate between the writer (back), the hand-over slot and the reader (front): publishing
+/// swaps the back buffer into the hand-over slot and flags it fresh, reading swaps a fresh hand-over
+/// buffer into the front. Neither side ever sees a buffer the other is writing, and a slow reader
+/// simply skips the states it missed. One writer thread and one reader thread.
+final class StateBuffer {
+    private static final int FRESH = 4; // flag bit beside the hand-over buffer's index
+    private final double[][] buffers;
+    private final AtomicInteger handOver = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    StateBuffer(int channels) {
+        buffers = new double[3][channels];
+    }
+
+    /// Writer side: copies state into the back buffer and makes it the latest
+    void publish(double[] state) {
+        System.arraycopy(state, 0, buffers[back], 0, state.length);
+        back = handOver.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /// Reader side: copies the latest state into out and returns true if it was published since the
+    /// previous read
+    boolean read(double[] out) {
+        boolean fresh = (handOver.get() & FRESH) != 0;
+        if (fresh) front = handOver.getAndSet(front) & ~FRESH;
+        System.arraycopy(buffers[front], 0, out, 0, out.length);
+        return fresh;
+    }
+}
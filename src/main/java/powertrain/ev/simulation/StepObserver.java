@@ -0,0 +1,6 @@
+package powertrain.ev.simulation;
+
+/// Called after every fixed physics step, on the thread that stepped the engine
+interface StepObserver {
+    void onStep(SimulationEngine engine);
+}
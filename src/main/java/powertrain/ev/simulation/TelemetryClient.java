@@ -0,0 +1,99 @@
+package powertrain.ev.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/// Subscribes to a TelemetryServer and prints one line per second: frames received, frames missing from
+/// the sequence, simulated time and a few channels. --slow makes it a deliberately slow consumer, to
+/// watch the server drop or decimate without the simulation slowing down.
+public final class TelemetryClient {
+    /// About a second of frames at 1000 Hz; a fixed size keeps the kernel from hiding a slow reader
+    static final int RECEIVE_BUFFER_BYTES = 64 * 1024;
+
+    private TelemetryClient() {}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = TelemetryServer.DEFAULT_PORT;
+        Character policy = null;
+        long slowMillis = 0;
+        long limit = Long.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--drop" -> policy = 'D';
+                case "--decimate" -> policy = 'S';
+                case "--slow" -> slowMillis = Long.parseLong(args[++i]);
+                case "--frames" -> limit = Long.parseLong(args[++i]);
+                default -> {
+                    System.err.println("Usage: TelemetryClient [--port n] [--drop|--decimate] [--slow ms-per-frame]"
+                            + " [--frames n]");
+                    System.exit(2);
+                }
+            }
+        }
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(RECEIVE_BUFFER_BYTES);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            if (policy != null) {
+                OutputStream out = socket.getOutputStream();
+                out.write(policy);
+                out.flush();
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != TelemetryServer.MAGIC) throw new IOException("Not a telemetry stream");
+            short version = in.readShort();
+            if (version != TelemetryServer.VERSION) throw new IOException("Unsupported telemetry version " + version);
+            String[] names = new String[in.readShort()];
+            String[] units = new String[names.length];
+            for (int c = 0; c < names.length; c++) {
+                names[c] = readString(in);
+                units[c] = readString(in);
+            }
+            System.out.println("Channels: " + String.join(", ", names));
+            float[] values = new float[names.length];
+            long received = 0, missing = 0, expected = -1, lastReport = System.nanoTime();
+            long windowReceived = 0, windowMissing = 0;
+            try {
+                while (received < limit) {
+                    long sequence = in.readLong();
+                    double time = in.readDouble();
+                    for (int c = 0; c < values.length; c++) values[c] = in.readFloat();
+                    if (expected >= 0 && sequence > expected) {
+                        missing += sequence - expected;
+                        windowMissing += sequence - expected;
+                    }
+                    expected = sequence + 1;
+                    received++;
+                    windowReceived++;
+                    long now = System.nanoTime();
+                    if (now - lastReport >= 1_000_000_000L) {
+                        System.out.printf(Locale.ROOT, "t=%.2f s  %d frames/s  %d missing  %s=%.1f %s  %s=%.1f %s%n",
+                                time, windowReceived, windowMissing, names[Channels.SPEED], values[Channels.SPEED],
+                                units[Channels.SPEED], names[Channels.SOC], values[Channels.SOC], units[Channels.SOC]);
+                        windowReceived = 0;
+                        windowMissing = 0;
+                        lastReport = now;
+                    }
+                    if (slowMillis > 0) Thread.sleep(slowMillis);
+                }
+            } catch (EOFException e) {
+                System.out.println("Server closed the stream");
+            }
+            System.out.printf(Locale.ROOT, "Received %d frames, %d missing%n", received, missing);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
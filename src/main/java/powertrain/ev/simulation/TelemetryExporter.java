@@ -0,0 +1,229 @@
+package powertrain.ev.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/// Streams a ColumnSource to CSV or to the columnar telemetry format, optionally gzip-compressed.
+/// Rows are formatted straight into a reusable byte buffer that is written through a FileChannel,
+/// so the per-row cost is a few integer divisions rather than a String.format call.
+final class TelemetryExporter {
+    enum Format {
+        CSV("CSV", ".csv", false, false),
+        CSV_GZIP("CSV (gzip)", ".csv.gz", false, true),
+        BINARY("Binary", ".evt", true, false),
+        BINARY_GZIP("Binary (gzip)", ".evt.gz", true, true);
+
+        final String label;
+        final String extension;
+        final boolean binary;
+        final boolean compressed;
+
+        Format(String label, String extension, boolean binary, boolean compressed) {
+            this.label = label;
+            this.extension = extension;
+            this.binary = binary;
+            this.compressed = compressed;
+        }
+
+        static Format ofLabel(String label) {
+            for (Format format : values()) {
+                if (format.label.equals(label)) return format;
+            }
+            throw new IllegalArgumentException("Unknown export format: " + label);
+        }
+    }
+
+    private static final int CHUNK_ROWS = 4096;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_NUMBER_BYTES = 32;
+
+    private TelemetryExporter() {}
+
+    static String parameterLine(SimulationParameters params) {
+        return String.format(Locale.ROOT, "Simulation Parameters: Voltage=%.2f V, Capacity=%.2f kWh, Motor Power=%.2f kW, " +
+                        "Mass=%.2f kg, Drag=%.2f, Frontal Area=%.2f m², Air Density=%.2f kg/m³, " +
+                        "Rolling Resistance=%.2f, Gear Ratio=%.2f, Thermal Mass=%.2f J/°C, Ambient=%.1f °C\n",
+                params.batteryVoltage, params.batteryCapacity, params.motorPower,
+                params.vehicleMass, params.dragCoefficient, params.frontalArea,
+                params.airDensity, params.rollingResistance, params.gearRatio,
+                params.thermalMass, params.ambientTemp);
+    }
+
+    /// Writes every row of source to target, reporting rows done to progress. Once cancelled returns
+    /// true the partial file is deleted and CancellationException is thrown.
+    static long export(ColumnSource source, String parameterLine, Format format, Path target,
+                       LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        boolean done = false;
+        try (Sink sink = new Sink(target, format.compressed)) {
+            long rows = format.binary
+                    ? writeBinary(source, sink, progress, cancelled)
+                    : writeCsv(source, parameterLine, sink, progress, cancelled);
+            done = true;
+            return rows;
+        } finally {
+            if (!done) Files.deleteIfExists(target);
+        }
+    }
+
+    private static long writeCsv(ColumnSource source, String parameterLine, Sink sink,
+                                 LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        String[] names = source.names();
+        String[] units = source.units();
+        StringBuilder header = new StringBuilder(parameterLine).append("Index");
+        for (int c = 0; c < names.length; c++) {
+            header.append(',').append(names[c]).append(" (").append(units[c]).append(')');
+        }
+        sink.put(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        long rows = source.rows();
+        double[][] chunk = new double[names.length][CHUNK_ROWS];
+        int rowBytes = (names.length + 1) * MAX_NUMBER_BYTES;
+        for (long start = 0; start < rows; start += CHUNK_ROWS) {
+            checkCancelled(cancelled);
+            int len = (int) Math.min(CHUNK_ROWS, rows - start);
+            for (int c = 0; c < names.length; c++) {
+                source.read(c, start, chunk[c], 0, len);
+            }
+            for (int i = 0; i < len; i++) {
+                ByteBuffer buffer = sink.reserve(rowBytes);
+                putLong(buffer, start + i);
+                for (int c = 0; c < names.length; c++) {
+                    buffer.put((byte) ',');
+                    putFixed2(buffer, chunk[c][i]);
+                }
+                buffer.put((byte) '\n');
+            }
+            progress.accept(start + len);
+        }
+        return rows;
+    }
+
+    /// Same block layout TelemetryRecorder writes, so uncompressed exports open with TelemetryReader
+    private static long writeBinary(ColumnSource source, Sink sink, LongConsumer progress,
+                                    BooleanSupplier cancelled) throws IOException {
+        TelemetryFile layout = new TelemetryFile(source.names(), source.units(), TelemetryFile.DEFAULT_BLOCK_ROWS);
+        long rows = source.rows();
+        ByteBuffer header = ByteBuffer.allocate(layout.headerLength);
+        layout.writeHeader(header, rows);
+        sink.put(header.array());
+        double[] column = new double[layout.blockRows];
+        for (long start = 0; start < rows; start += layout.blockRows) {
+            checkCancelled(cancelled);
+            int len = (int) Math.min(layout.blockRows, rows - start);
+            for (int c = 0; c < layout.columns(); c++) {
+                source.read(c, start, column, 0, len);
+                for (int i = len; i < layout.blockRows; i++) column[i] = 0;
+                ByteBuffer buffer = sink.reserve(layout.blockRows * Double.BYTES);
+                buffer.asDoubleBuffer().put(column);
+                buffer.position(buffer.position() + layout.blockRows * Double.BYTES);
+            }
+            progress.accept(start + len);
+        }
+        return rows;
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+    }
+
+    static void putLong(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        /// digits were written least significant first
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte tmp = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, tmp);
+        }
+    }
+
+    /// Equivalent of "%.2f" (half-up) without allocating; values beyond 1e15 fall back to Double.toString
+    static void putFixed2(ByteBuffer buffer, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            buffer.put(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long cents = Math.round(value * 100);
+        putLong(buffer, cents / 100);
+        long fraction = cents % 100;
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + fraction / 10));
+        buffer.put((byte) ('0' + fraction % 10));
+    }
+
+    /// Staging buffer in front of the file channel or, when compressing, a fast-level GZIP stream
+    private static final class Sink implements Closeable {
+        private final FileChannel channel;
+        private final OutputStream gzip;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        Sink(Path target, boolean compressed) throws IOException {
+            channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            gzip = compressed ? new GZIPOutputStream(java.nio.channels.Channels.newOutputStream(channel), 1 << 16) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            } : null;
+        }
+
+        /// Returns the buffer with at least bytes free, flushing first if needed
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+            return buffer;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int len = Math.min(bytes.length - offset, reserve(1).remaining());
+                buffer.put(bytes, offset, len);
+                offset += len;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            if (gzip != null) {
+                gzip.write(buffer.array(), 0, buffer.limit());
+            } else {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                if (gzip != null) gzip.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
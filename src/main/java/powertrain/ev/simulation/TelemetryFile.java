@@ -0,0 +1,116 @@
+package powertrain.ev.simulation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/// Layout of the columnar telemetry file shared by TelemetryRecorder and TelemetryReader.
+/// Header (little-endian): magic, version, column count, rows per block, row count, header length,
+/// then each column's name and unit. Rows are grouped into blocks; inside a block every column is
+/// stored contiguously as blockRows doubles, so a column can be read without touching the others.
+final class TelemetryFile {
+    static final int MAGIC = 0x4C545645; // "EVTL"
+    static final short VERSION = 1;
+    static final int ROWS_OFFSET = 12; // long row count, rewritten as rows are appended
+    static final int HEADER_LENGTH_OFFSET = 20;
+    static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    final String[] names;
+    final String[] units;
+    final int blockRows;
+    final int headerLength;
+    final long blockBytes;
+
+    TelemetryFile(String[] names, String[] units, int blockRows) {
+        if (names.length != units.length) throw new IllegalArgumentException("Each column needs a unit");
+        this.names = names;
+        this.units = units;
+        this.blockRows = blockRows;
+        int length = 24;
+        for (int i = 0; i < names.length; i++) {
+            length += 4 + utf8(names[i]).length + utf8(units[i]).length;
+        }
+        headerLength = (length + 7) & ~7;
+        blockBytes = (long) names.length * blockRows * Double.BYTES;
+    }
+
+    /// Columns written by the recorder: simulated time followed by every engine channel
+    static TelemetryFile forChannels(int blockRows) {
+        String[] names = new String[Channels.COUNT + 1];
+        String[] units = new String[Channels.COUNT + 1];
+        names[0] = "Time";
+        units[0] = "s";
+        System.arraycopy(Channels.NAMES, 0, names, 1, Channels.COUNT);
+        System.arraycopy(Channels.UNITS, 0, units, 1, Channels.COUNT);
+        return new TelemetryFile(names, units, blockRows);
+    }
+
+    int columns() {
+        return names.length;
+    }
+
+    /// Byte position of a value in the file
+    long position(long row, int column) {
+        long block = row / blockRows;
+        int within = (int) (row % blockRows);
+        return headerLength + block * blockBytes + ((long) column * blockRows + within) * Double.BYTES;
+    }
+
+    /// File length needed to hold rows, rounded up to whole blocks
+    long length(long rows) {
+        return headerLength + (rows + blockRows - 1) / blockRows * blockBytes;
+    }
+
+    void writeHeader(ByteBuffer buffer, long rows) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short) names.length);
+        buffer.putInt(8, blockRows);
+        buffer.putLong(ROWS_OFFSET, rows);
+        buffer.putInt(HEADER_LENGTH_OFFSET, headerLength);
+        int pos = 24;
+        for (int i = 0; i < names.length; i++) {
+            pos = putString(buffer, pos, names[i]);
+            pos = putString(buffer, pos, units[i]);
+        }
+    }
+
+    /// Parses a header; buffer must hold at least headerLength bytes
+    static TelemetryFile readHeader(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) throw new IllegalArgumentException("Not a telemetry file");
+        if (buffer.getShort(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported telemetry file version " + buffer.getShort(4));
+        }
+        int columns = buffer.getShort(6);
+        int blockRows = buffer.getInt(8);
+        String[] names = new String[columns];
+        String[] units = new String[columns];
+        int pos = 24;
+        for (int i = 0; i < columns; i++) {
+            names[i] = getString(buffer, pos);
+            pos += 2 + Short.toUnsignedInt(buffer.getShort(pos));
+            units[i] = getString(buffer, pos);
+            pos += 2 + Short.toUnsignedInt(buffer.getShort(pos));
+        }
+        return new TelemetryFile(names, units, blockRows);
+    }
+
+    private static int putString(ByteBuffer buffer, int pos, String value) {
+        byte[] bytes = utf8(value);
+        buffer.putShort(pos, (short) bytes.length);
+        buffer.put(pos + 2, bytes);
+        return pos + 2 + bytes.length;
+    }
+
+    private static String getString(ByteBuffer buffer, int pos) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(pos))];
+        buffer.get(pos + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
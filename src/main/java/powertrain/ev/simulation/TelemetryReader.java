@@ -0,0 +1,139 @@
+package powertrain.ev.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/// Random and column-wise access to a telemetry file, mapping one window of blocks at a time so
+/// files far larger than the heap can be read. Usage: TelemetryReader <file.evt> prints a summary.
+public final class TelemetryReader implements ColumnSource, Closeable {
+    private final FileChannel channel;
+    private final TelemetryFile layout;
+    private final long rows;
+    private MappedByteBuffer window;
+    private long windowFirstBlock = -1;
+
+    private TelemetryReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                Math.min(channel.size(), 64 * 1024));
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        layout = TelemetryFile.readHeader(head);
+        rows = head.getLong(TelemetryFile.ROWS_OFFSET);
+    }
+
+    static TelemetryReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new TelemetryReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String[] names() {
+        return layout.names;
+    }
+
+    @Override
+    public String[] units() {
+        return layout.units;
+    }
+
+    @Override
+    public long rows() {
+        return rows;
+    }
+
+    TelemetryFile layout() {
+        return layout;
+    }
+
+    /// Index of a column by name, or -1
+    int column(String name) {
+        for (int i = 0; i < layout.columns(); i++) {
+            if (layout.names[i].equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+
+    double get(long row, int column) throws IOException {
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        long block = row / layout.blockRows;
+        mapWindowFor(block);
+        return window.getDouble((int) (layout.position(row, column) - windowPosition()));
+    }
+
+    @Override
+    public void read(int column, long fromRow, double[] dst, int offset, int len) throws IOException {
+        if (fromRow < 0 || fromRow + len > rows) {
+            throw new IndexOutOfBoundsException("Rows " + fromRow + "+" + len + " of " + rows);
+        }
+        long row = fromRow;
+        int done = 0;
+        while (done < len) {
+            long block = row / layout.blockRows;
+            mapWindowFor(block);
+            int within = (int) (row % layout.blockRows);
+            int run = Math.min(len - done, layout.blockRows - within);
+            int pos = (int) (layout.position(row, column) - windowPosition());
+            window.asDoubleBuffer().get(pos / Double.BYTES, dst, offset + done, run);
+            done += run;
+            row += run;
+        }
+    }
+
+    private long windowPosition() {
+        return layout.headerLength + windowFirstBlock * layout.blockBytes;
+    }
+
+    private void mapWindowFor(long block) throws IOException {
+        if (window != null && block >= windowFirstBlock && block < windowFirstBlock + TelemetryRecorder.WINDOW_BLOCKS) {
+            return;
+        }
+        windowFirstBlock = block - block % TelemetryRecorder.WINDOW_BLOCKS;
+        long position = windowPosition();
+        long size = Math.min(layout.blockBytes * TelemetryRecorder.WINDOW_BLOCKS, channel.size() - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TelemetryReader <file.evt>");
+            System.exit(2);
+        }
+        try (TelemetryReader reader = open(Path.of(args[0]))) {
+            TelemetryFile layout = reader.layout();
+            System.out.println("Rows: " + reader.rows());
+            double[] chunk = new double[layout.blockRows];
+            for (int c = 0; c < layout.columns(); c++) {
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum = 0;
+                for (long row = 0; row < reader.rows(); row += chunk.length) {
+                    int len = (int) Math.min(chunk.length, reader.rows() - row);
+                    reader.read(c, row, chunk, 0, len);
+                    for (int i = 0; i < len; i++) {
+                        min = Math.min(min, chunk[i]);
+                        max = Math.max(max, chunk[i]);
+                        sum += chunk[i];
+                    }
+                }
+                System.out.printf(Locale.ROOT, "%s (%s): min=%.3f mean=%.3f max=%.3f%n", layout.names[c], layout.units[c],
+                        min, reader.rows() > 0 ? sum / reader.rows() : 0, max);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package powertrain.ev.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/// Appends every step of every channel to a memory-mapped TelemetryFile. Only one window of
+/// blocks is mapped at a time, so heap use stays constant however long the recording runs.
+final class TelemetryRecorder implements StepObserver, Closeable {
+    static final int WINDOW_BLOCKS = 16;
+    private final Path path;
+    private final FileChannel channel;
+    private final TelemetryFile layout;
+    private final MappedByteBuffer header;
+    private final double[] sample = new double[Channels.COUNT];
+    private MappedByteBuffer window;
+    private long windowPosition; // file offset of the mapped window
+    private long windowEndRow; // first row past the mapped window
+    private long rows;
+
+    private TelemetryRecorder(Path path, FileChannel channel, TelemetryFile layout) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.layout = layout;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.headerLength);
+        layout.writeHeader(header, 0);
+    }
+
+    static TelemetryRecorder create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new TelemetryRecorder(path, channel, TelemetryFile.forChannels(TelemetryFile.DEFAULT_BLOCK_ROWS));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    @Override
+    public void onStep(SimulationEngine engine) {
+        engine.sample(sample);
+        append(engine.time, sample);
+    }
+
+    /// Appends one row: time followed by values indexed by Channels
+    void append(double time, double[] values) {
+        if (rows >= windowEndRow) mapWindow();
+        long base = layout.position(rows, 0) - windowPosition;
+        long stride = (long) layout.blockRows * Double.BYTES;
+        window.putDouble((int) base, time);
+        for (int i = 0; i < Channels.COUNT; i++) {
+            window.putDouble((int) (base + (i + 1) * stride), values[i]);
+        }
+        rows++;
+        header.putLong(TelemetryFile.ROWS_OFFSET, rows);
+    }
+
+    private void mapWindow() {
+        if (window != null) window.force();
+        long windowRows = (long) layout.blockRows * WINDOW_BLOCKS;
+        windowPosition = layout.position(rows, 0);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowPosition, layout.blockBytes * WINDOW_BLOCKS);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot extend telemetry file " + path, e);
+        }
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowEndRow = rows + windowRows;
+    }
+
+    /// Publishes the final row count and trims the unused tail of the last window
+    @Override
+    public void close() throws IOException {
+        try {
+            header.putLong(TelemetryFile.ROWS_OFFSET, rows);
+            if (window != null) window.force();
+            header.force();
+            window = null;
+            channel.truncate(layout.length(rows));
+        } finally {
+            channel.close();
+        }
+    }
+}
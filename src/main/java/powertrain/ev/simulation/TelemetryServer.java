@@ -0,0 +1,267 @@
+package powertrain.ev.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/// Streams every physics step to local subscribers over TCP. The simulation thread only copies the step
+/// into a SampleQueue; one selector thread drains it, encodes each step once and fans it out to the
+/// subscribers' own bounded outboxes, writing whatever each socket accepts without blocking. A subscriber
+/// whose outbox fills either loses the new frames (DROP) or is sent every 2nd, 4th, ... frame until it
+/// catches up (DECIMATE), so a slow reader can cost only itself frames, never the simulation.
+///
+/// Protocol, big-endian: on connect the server sends a hello of int MAGIC, short VERSION, short channel
+/// count and per channel a name and a unit as short length plus UTF-8 bytes. Every frame is then long
+/// step sequence, double simulated time (s) and one float per channel in Channels order; gaps in the
+/// sequence are frames dropped or decimated. A subscriber may send one byte, 'D' (drop) or 'S'
+/// (subsample), to choose DROP or DECIMATE instead of the server default.
+final class TelemetryServer implements StepObserver, Closeable {
+    static final int DEFAULT_PORT = 7878;
+    static final int MAGIC = 0x45565453; // "EVTS"
+    static final short VERSION = 1;
+    static final int FRAME_BYTES = Long.BYTES + Double.BYTES + Channels.COUNT * Float.BYTES;
+    static final int OUTBOX_FRAMES = 1024; // per subscriber
+    static final int HANDOFF_STEPS = 4096; // about 4 s at the default 1000 Hz physics rate
+    static final int MAX_DECIMATION = 64;
+    /// Small kernel send buffer, so a backlog builds in the outbox, where the policy governs it
+    static final int SEND_BUFFER_BYTES = 32 * 1024;
+    private static final long POLL_MILLIS = 5;
+
+    enum Policy { DROP, DECIMATE }
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Policy defaultPolicy;
+    private final SampleQueue handoff = new SampleQueue(HANDOFF_STEPS, Channels.COUNT + 2);
+    private final double[] step = new double[Channels.COUNT + 2]; // simulation thread: sequence, time, channels
+    private final double[] sample = new double[Channels.COUNT]; // simulation thread
+    private final double[] drained = new double[Channels.COUNT + 2]; // server thread
+    private final ByteBuffer frame = ByteBuffer.allocate(FRAME_BYTES); // server thread
+    private final ByteBuffer request = ByteBuffer.allocate(16); // server thread
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final Thread thread;
+    private long sequence; // simulation thread
+    private volatile boolean open = true;
+    private volatile int subscriberCount;
+
+    private TelemetryServer(ServerSocketChannel server, Selector selector, Policy defaultPolicy) {
+        this.server = server;
+        this.selector = selector;
+        this.defaultPolicy = defaultPolicy;
+        this.thread = new Thread(this::serve, "ev-telemetry");
+        thread.setDaemon(true);
+    }
+
+    /// Listens on the loopback interface; port 0 picks a free port
+    static TelemetryServer start(int port, Policy defaultPolicy) throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        TelemetryServer telemetry = new TelemetryServer(server, selector, defaultPolicy);
+        telemetry.thread.start();
+        return telemetry;
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    int subscribers() {
+        return subscriberCount;
+    }
+
+    /// Steps lost before reaching any subscriber because the server thread fell behind
+    long droppedSteps() {
+        return handoff.dropped();
+    }
+
+    /// Simulation thread: a copy and a release store, whatever the subscribers are doing
+    @Override
+    public void onStep(SimulationEngine engine) {
+        engine.sample(sample);
+        step[0] = sequence++;
+        step[1] = engine.time;
+        System.arraycopy(sample, 0, step, 2, Channels.COUNT);
+        handoff.offer(step);
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (open) {
+                selector.select(POLL_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) readRequest((Subscriber) key.attachment());
+                    if (key.isValid() && key.isWritable()) flush((Subscriber) key.attachment());
+                }
+                fanOut();
+            }
+        } catch (IOException e) {
+            System.err.println("Telemetry server stopped: " + e.getMessage());
+        } finally {
+            for (Subscriber subscriber : subscribers) closeQuietly(subscriber.channel);
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().setSendBufferSize(SEND_BUFFER_BYTES);
+        Subscriber subscriber = new Subscriber(channel, defaultPolicy);
+        subscriber.key = channel.register(selector, SelectionKey.OP_READ, subscriber);
+        subscriber.writeHello();
+        subscribers.add(subscriber);
+        subscriberCount = subscribers.size();
+        flush(subscriber);
+    }
+
+    /// The only request is a policy byte; end of stream or an error closes the subscriber
+    private void readRequest(Subscriber subscriber) {
+        request.clear();
+        try {
+            int read = subscriber.channel.read(request);
+            if (read < 0) {
+                drop(subscriber);
+                return;
+            }
+            for (int i = 0; i < request.position(); i++) {
+                if (request.get(i) == 'D') subscriber.policy = Policy.DROP;
+                if (request.get(i) == 'S') subscriber.policy = Policy.DECIMATE;
+            }
+        } catch (IOException e) {
+            drop(subscriber);
+        }
+    }
+
+    /// Encodes each new step once and offers it to every subscriber, then writes what the sockets accept
+    private void fanOut() {
+        if (subscribers.isEmpty()) {
+            handoff.clear();
+            return;
+        }
+        for (Subscriber subscriber : subscribers) subscriber.adapt();
+        while (handoff.poll(drained)) {
+            frame.clear();
+            frame.putLong((long) drained[0]).putDouble(drained[1]);
+            for (int c = 0; c < Channels.COUNT; c++) frame.putFloat((float) drained[c + 2]);
+            for (Subscriber subscriber : subscribers) subscriber.offer(frame);
+        }
+        for (int i = subscribers.size() - 1; i >= 0; i--) {
+            Subscriber subscriber = subscribers.get(i);
+            if (subscriber.outbox.position() > 0) flush(subscriber);
+        }
+    }
+
+    /// Writes without blocking and waits for OP_WRITE only while the socket is backed up
+    private void flush(Subscriber subscriber) {
+        try {
+            subscriber.outbox.flip();
+            subscriber.channel.write(subscriber.outbox);
+            subscriber.outbox.compact();
+            int interest = subscriber.outbox.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (subscriber.key.interestOps() != interest) subscriber.key.interestOps(interest);
+        } catch (IOException e) {
+            drop(subscriber);
+        }
+    }
+
+    private void drop(Subscriber subscriber) {
+        subscriber.key.cancel();
+        closeQuietly(subscriber.channel);
+        subscribers.remove(subscriber);
+        subscriberCount = subscribers.size();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    /// One connection with its bounded outbox, kept in write mode between flushes
+    private static final class Subscriber {
+        final SocketChannel channel;
+        final ByteBuffer outbox = ByteBuffer.allocate(OUTBOX_FRAMES * FRAME_BYTES);
+        SelectionKey key;
+        Policy policy;
+        int decimation = 1; // send every decimation-th frame
+        int skipped;
+
+        Subscriber(SocketChannel channel, Policy policy) {
+            this.channel = channel;
+            this.policy = policy;
+        }
+
+        void writeHello() {
+            outbox.putInt(MAGIC).putShort(VERSION).putShort((short) Channels.COUNT);
+            for (int c = 0; c < Channels.COUNT; c++) {
+                putString(Channels.NAMES[c]);
+                putString(Channels.UNITS[c]);
+            }
+        }
+
+        private void putString(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            outbox.putShort((short) bytes.length).put(bytes);
+        }
+
+        /// Once per poll: decimation doubles while the outbox is over half full and halves once it is
+        /// under an eighth
+        void adapt() {
+            if (policy != Policy.DECIMATE) {
+                decimation = 1;
+                return;
+            }
+            int backlog = outbox.position();
+            if (backlog > outbox.capacity() / 2 && decimation < MAX_DECIMATION) decimation *= 2;
+            else if (backlog < outbox.capacity() / 8 && decimation > 1) decimation /= 2;
+        }
+
+        /// Frames that do not fit are lost under either policy
+        void offer(ByteBuffer frame) {
+            if (++skipped < decimation) return;
+            skipped = 0;
+            if (outbox.remaining() >= FRAME_BYTES) outbox.put(frame.array(), 0, FRAME_BYTES);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package powertrain.ev.simulation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/// Append-only sampled history of every channel that forks in O(1). A fork shares the rows its parent
+/// had at the fork point and appends to chunks of its own, so a checkpoint and every branch started
+/// from it read the same prefix without copying it; rows already written are never written again,
+/// which keeps the shared prefix stable while the parent goes on appending. Rows live in column-major
+/// chunks of CHUNK_ROWS, allocated as the trace grows.
+/// One writer per trace. A fork may be handed to another thread once it is created, e.g. through an
+/// executor; its prefix is only read. The chunk list is copy-on-write, so a reader on another thread
+/// never sees it half-grown while the parent appends; that copy happens once per CHUNK_ROWS rows.
+final class Trace implements ColumnSource {
+    static final int CHUNK_ROWS = 4096;
+    private final Trace parent;
+    private final long base; // rows inherited from parent
+    private final List<double[][]> chunks = new CopyOnWriteArrayList<>(); // [column][row in chunk]
+    private long rows;
+
+    Trace() {
+        this(null, 0);
+    }
+
+    private Trace(Trace parent, long base) {
+        this.parent = parent;
+        this.base = base;
+        this.rows = base;
+    }
+
+    /// A new trace that starts with this one's current rows and appends its own. An empty fork is
+    /// skipped, so repeated checkpoints of an idle trace do not deepen the chain.
+    Trace fork() {
+        if (rows == base && parent != null) return new Trace(parent, base);
+        return new Trace(this, rows);
+    }
+
+    /// Appends a sample indexed by Channels
+    void append(double[] sample) {
+        int at = (int) ((rows - base) % CHUNK_ROWS);
+        if (at == 0) chunks.add(new double[Channels.COUNT][CHUNK_ROWS]);
+        double[][] chunk = chunks.get(chunks.size() - 1);
+        for (int c = 0; c < Channels.COUNT; c++) chunk[c][at] = sample[c];
+        rows++;
+    }
+
+    double get(int column, long row) {
+        Trace owner = this;
+        while (row < owner.base) owner = owner.parent;
+        long local = row - owner.base;
+        return owner.chunks.get((int) (local / CHUNK_ROWS))[column][(int) (local % CHUNK_ROWS)];
+    }
+
+    @Override
+    public String[] names() {
+        return Channels.NAMES;
+    }
+
+    @Override
+    public String[] units() {
+        return Channels.UNITS;
+    }
+
+    @Override
+    public long rows() {
+        return rows;
+    }
+
+    /// Copies whole chunk runs at a time, walking up to the ancestor that holds each part of the range
+    @Override
+    public void read(int column, long fromRow, double[] dst, int offset, int len) {
+        while (len > 0) {
+            Trace owner = this;
+            long end = rows;
+            while (fromRow < owner.base) {
+                end = owner.base;
+                owner = owner.parent;
+            }
+            long local = fromRow - owner.base;
+            int inChunk = (int) (local % CHUNK_ROWS);
+            int n = (int) Math.min(len, Math.min(CHUNK_ROWS - inChunk, end - fromRow));
+            System.arraycopy(owner.chunks.get((int) (local / CHUNK_ROWS))[column], inChunk, dst, offset, n);
+            fromRow += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
+    /// Appends the engine's outputs whenever simulated time passes the next multiple of interval, so
+    /// branches stepped at different or adaptive step sizes record comparable traces
+    static final class Sampler implements StepObserver {
+        private final Trace trace;
+        private final double interval; // s
+        private final double[] sample = new double[Channels.COUNT];
+        private double next; // simulated s
+
+        Sampler(Trace trace, double interval, double startTime) {
+            if (!(interval > 0)) throw new IllegalArgumentException("Sample interval must be positive: " + interval);
+            this.trace = trace;
+            this.interval = interval;
+            this.next = startTime;
+        }
+
+        @Override
+        public void onStep(SimulationEngine engine) {
+            if (engine.time < next) return;
+            engine.sample(sample);
+            trace.append(sample);
+            next += interval * (Math.floor((engine.time - next) / interval) + 1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package powertrain.ev.simulation;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/// CellPack's per-cell passes on the Vector API, a full vector of cells at a time at the platform's
+/// preferred width; the cells past the last full vector go through the scalar kernel. Only loaded when
+/// jdk.incubator.vector is in the boot layer (run with --add-modules jdk.incubator.vector).
+final class VectorCellKernel implements CellPack.Kernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "vector x" + SPECIES.length();
+    }
+
+    @Override
+    public void conductances(CellPack pack) {
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        int bound = SPECIES.loopBound(pack.size);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector r = DoubleVector.fromArray(SPECIES, pack.r25, i).mul(DoubleVector.fromArray(SPECIES, pack.factor, i));
+            DoubleVector g = one.div(r);
+            DoubleVector e = DoubleVector.fromArray(SPECIES, pack.ocv, i)
+                    .sub(DoubleVector.fromArray(SPECIES, pack.rc1, i))
+                    .sub(DoubleVector.fromArray(SPECIES, pack.rc2, i));
+            r.intoArray(pack.r, i);
+            g.intoArray(pack.g, i);
+            e.intoArray(pack.e, i);
+            g.mul(e).intoArray(pack.ge, i);
+        }
+        CellPack.ScalarKernel.conductances(pack, i, pack.size);
+    }
+
+    /// Same operations in the same order as the scalar kernel, lane by lane
+    @Override
+    public void advance(CellPack pack, double dt, double decay1, double decay2) {
+        double[] temp = pack.temp;
+        double charge1 = BatteryModel.R1_SHARE * (1 - decay1);
+        double charge2 = BatteryModel.R2_SHARE * (1 - decay2);
+        DoubleVector coolant = DoubleVector.broadcast(SPECIES, pack.coolantTemp);
+        int bound = SPECIES.loopBound(pack.size);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, pack.v, i);
+            DoubleVector current = DoubleVector.fromArray(SPECIES, pack.e, i).sub(v)
+                    .mul(DoubleVector.fromArray(SPECIES, pack.g, i));
+            DoubleVector loss = current.mul(DoubleVector.fromArray(SPECIES, pack.ocv, i).sub(v));
+            DoubleVector drop = DoubleVector.fromArray(SPECIES, pack.r, i).mul(current);
+            DoubleVector.fromArray(SPECIES, pack.rc1, i).mul(decay1).add(drop.mul(charge1)).intoArray(pack.rc1, i);
+            DoubleVector.fromArray(SPECIES, pack.rc2, i).mul(decay2).add(drop.mul(charge2)).intoArray(pack.rc2, i);
+            DoubleVector.fromArray(SPECIES, pack.soc, i)
+                    .sub(current.mul(dt).mul(DoubleVector.fromArray(SPECIES, pack.socPerAmpSecond, i)))
+                    .max(0).min(100)
+                    .intoArray(pack.soc, i);
+            DoubleVector t = DoubleVector.fromArray(SPECIES, temp, i + 1);
+            DoubleVector cooling = t.sub(coolant).mul(CellPack.COOLANT_CONDUCTANCE);
+            DoubleVector conduction = DoubleVector.fromArray(SPECIES, temp, i)
+                    .add(DoubleVector.fromArray(SPECIES, temp, i + 2))
+                    .sub(t.mul(2))
+                    .mul(CellPack.NEIGHBOUR_CONDUCTANCE);
+            t.add(loss.add(conduction).sub(cooling).mul(dt).mul(DoubleVector.fromArray(SPECIES, pack.heatRate, i)))
+                    .intoArray(pack.nextTemp, i + 1);
+        }
+        CellPack.ScalarKernel.advance(pack, i, pack.size, dt, decay1, decay2);
+    }
+
+    @Override
+    public void extremes(CellPack pack) {
+        double[] temp = pack.temp;
+        DoubleVector socMin = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector socMax = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        DoubleVector tempMin = socMin;
+        DoubleVector tempMax = socMax;
+        int bound = SPECIES.loopBound(pack.size);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector soc = DoubleVector.fromArray(SPECIES, pack.soc, i);
+            DoubleVector t = DoubleVector.fromArray(SPECIES, temp, i + 1);
+            socMin = socMin.min(soc);
+            socMax = socMax.max(soc);
+            tempMin = tempMin.min(t);
+            tempMax = tempMax.max(t);
+        }
+        pack.socMin = socMin.reduceLanes(VectorOperators.MIN);
+        pack.socMax = socMax.reduceLanes(VectorOperators.MAX);
+        pack.tempMin = tempMin.reduceLanes(VectorOperators.MIN);
+        pack.tempMax = tempMax.reduceLanes(VectorOperators.MAX);
+        CellPack.ScalarKernel.extremes(pack, i, pack.size);
+    }
+}
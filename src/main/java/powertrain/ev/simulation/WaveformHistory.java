@@ -0,0 +1,177 @@
+package powertrain.ev.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// Waveform history of the whole session at every zoom level. Samples are appended at full rate to a
+/// Trace, and each drawn channel also keeps a tower of min/max levels: level k holds one bucket per
+/// FACTOR^k samples with the smallest and largest sample in it, level 0 being the trace itself. A new
+/// sample updates one open bucket per level and closes it every FACTOR^k samples, so recording costs
+/// amortized O(1) and all levels together hold a third as many buckets as there are samples. A query
+/// reads the coarsest level whose buckets still fit in a pixel column and splits only the buckets cut
+/// by a column edge, so it touches a few dozen buckets per column however long the session is.
+/// FX thread only; the trace may be forked and handed to other threads.
+final class WaveformHistory {
+    static final int FACTOR = 4; // buckets of one level per bucket of the next
+    /// Column bounds this close to a whole row count as that row, so the same grid read in one piece or
+    /// in parts assigns every row to the same columns
+    static final double ROW_TOLERANCE = 1e-6;
+    private final Tower[] towers = new Tower[Channels.COUNT]; // null for channels that are not drawn
+    private final double[] block = new double[Trace.CHUNK_ROWS];
+    private Trace trace = new Trace();
+    private double lo; // extremes gathered by include
+    private double hi;
+
+    /// channels are the Channels indices that can be read back decimated
+    WaveformHistory(int... channels) {
+        for (int channel : channels) towers[channel] = new Tower();
+    }
+
+    /// Every sample recorded since the last reset, indexed by Channels
+    Trace trace() {
+        return trace;
+    }
+
+    long rows() {
+        return trace.rows();
+    }
+
+    /// Starts over on trace, which may already hold rows (e.g. a fork of a checkpoint's history); the
+    /// levels are rebuilt from them in one pass
+    void reset(Trace trace) {
+        this.trace = trace;
+        long rows = trace.rows();
+        for (int c = 0; c < Channels.COUNT; c++) {
+            Tower tower = towers[c];
+            if (tower == null) continue;
+            tower.clear();
+            for (long row = 0; row < rows; row += block.length) {
+                int n = (int) Math.min(block.length, rows - row);
+                trace.read(c, row, block, 0, n);
+                for (int i = 0; i < n; i++) tower.add(block[i]);
+            }
+        }
+    }
+
+    /// Records a sample indexed by Channels
+    void record(double[] sample) {
+        trace.append(sample);
+        for (int c = 0; c < Channels.COUNT; c++) {
+            if (towers[c] != null) towers[c].add(sample[c]);
+        }
+    }
+
+    /// Smallest and largest value of channel in each of columns equal parts of the rows [from, to);
+    /// fractional bounds are widened to whole rows, so neighbouring columns may share one. Columns
+    /// holding no recorded row get NaN.
+    void read(int channel, double from, double to, int columns, double[] min, double[] max) {
+        Tower tower = towers[channel];
+        if (tower == null) throw new IllegalArgumentException("Channel " + channel + " is not decimated");
+        long rows = trace.rows();
+        double perColumn = (to - from) / columns;
+        int level = 0;
+        long bucket = 1; // rows per bucket at level
+        while (level < tower.levels.size() && bucket * FACTOR <= perColumn) {
+            level++;
+            bucket *= FACTOR;
+        }
+        for (int c = 0; c < columns; c++) {
+            long first = Math.max(0, (long) Math.floor(from + perColumn * c + ROW_TOLERANCE));
+            long end = Math.min(rows, (long) Math.ceil(from + perColumn * (c + 1) - ROW_TOLERANCE));
+            lo = Double.NaN;
+            hi = Double.NaN;
+            if (first < end) {
+                long last = (end - 1) / bucket;
+                for (long b = first / bucket; b <= last; b++) include(tower, channel, level, bucket, b, first, end);
+            }
+            min[c] = lo;
+            max[c] = hi;
+        }
+    }
+
+    /// Widens lo and hi by the rows of bucket b of level, whose buckets span size rows, that lie in
+    /// [first, end). A bucket cut by either bound, or still filling at the end of the trace, is gathered
+    /// from the level below, down to the rows themselves; that costs at most FACTOR reads per level.
+    private void include(Tower tower, int channel, int level, long size, long b, long first, long end) {
+        if (level == 0) {
+            double value = trace.get(channel, b);
+            widen(value, value);
+            return;
+        }
+        Level summary = tower.levels.get(level - 1);
+        long start = b * size;
+        if (b < summary.closed && start >= first && start + size <= end) {
+            widen(summary.min(b), summary.max(b));
+            return;
+        }
+        long childSize = size / FACTOR;
+        long from = Math.max(b * FACTOR, first / childSize);
+        long to = Math.min((b + 1) * FACTOR - 1, (end - 1) / childSize);
+        for (long child = from; child <= to; child++) include(tower, channel, level - 1, childSize, child, first, end);
+    }
+
+    private void widen(double min, double max) {
+        if (!(min >= lo)) lo = min; // also replaces NaN
+        if (!(max <= hi)) hi = max;
+    }
+
+    /// The min/max levels of one channel
+    private static final class Tower {
+        final List<Level> levels = new ArrayList<>(); // levels.get(k - 1) is level k
+
+        void clear() {
+            levels.clear();
+        }
+
+        void add(double value) {
+            add(0, value, value);
+        }
+
+        /// Folds a closed bucket of level k (a sample for k = 0) into the open bucket of level k + 1
+        private void add(int k, double min, double max) {
+            if (k == levels.size()) levels.add(new Level());
+            Level level = levels.get(k);
+            if (level.fold(min, max)) add(k + 1, level.closedMin, level.closedMax);
+        }
+    }
+
+    /// One level: closed buckets in chunks, plus the extremes of the open bucket still filling
+    private static final class Level {
+        private final List<double[]> minChunks = new ArrayList<>();
+        private final List<double[]> maxChunks = new ArrayList<>();
+        long closed;
+        private int openCount;
+        private double openMin;
+        private double openMax;
+        double closedMin; // the bucket closed by the last fold that returned true
+        double closedMax;
+
+        /// Returns true when the fold closed the open bucket
+        boolean fold(double min, double max) {
+            if (openCount == 0 || min < openMin) openMin = min;
+            if (openCount == 0 || max > openMax) openMax = max;
+            if (++openCount < FACTOR) return false;
+            int at = (int) (closed % Trace.CHUNK_ROWS);
+            if (at == 0) {
+                minChunks.add(new double[Trace.CHUNK_ROWS]);
+                maxChunks.add(new double[Trace.CHUNK_ROWS]);
+            }
+            minChunks.get(minChunks.size() - 1)[at] = openMin;
+            maxChunks.get(maxChunks.size() - 1)[at] = openMax;
+            closed++;
+            openCount = 0;
+            closedMin = openMin;
+            closedMax = openMax;
+            return true;
+        }
+
+        /// Extremes of closed bucket b
+        double min(long b) {
+            return minChunks.get((int) (b / Trace.CHUNK_ROWS))[(int) (b % Trace.CHUNK_ROWS)];
+        }
+
+        double max(long b) {
+            return maxChunks.get((int) (b / Trace.CHUNK_ROWS))[(int) (b % Trace.CHUNK_ROWS)];
+        }
+    }
+}
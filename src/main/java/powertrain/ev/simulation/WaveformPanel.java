@@ -0,0 +1,360 @@
+package powertrain.ev.simulation;
+
+import java.util.Locale;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.TextAlignment;
+
+/// Waveform display built from stacked canvases: a grid drawn once, a label layer redrawn only when
+/// channel visibility or the view changes, and one layer per trace. The view is a window of history
+/// rows that follows the newest sample by default; the mouse wheel zooms it around the pointer from
+/// MIN_SPAN out to the whole session, dragging pans back in time and a double click follows again.
+/// Each trace strokes one min/max pair per pixel column read from the history's decimated levels, so a
+/// frame costs the same whether the window holds a second or hours. While following, the window moves
+/// in whole columns on a fixed grid of rows and the double-width trace layers scroll by translation,
+/// so a frame strokes only the columns completed since the last one; zooming, panning, a rescale or a
+/// layer running out of room re-strokes the whole window.
+final class WaveformPanel extends Pane {
+    /// Channels drawn, which the history must decimate
+    static final int[] CHANNELS = {Channels.VOLTAGE, Channels.CURRENT, Channels.SPEED, Channels.TEMP};
+    static final double MIN_SPAN = 1; // s
+    static final double DEFAULT_SPAN = 10; // s
+    private static final double ZOOM_STEP = 1.25; // per wheel notch
+    private final double width;
+    private final double height;
+    private final WaveformHistory history;
+    private final double sampleRate; // history rows per second
+    private final Canvas labels;
+    private final TraceLayer voltage;
+    private final TraceLayer current;
+    private final TraceLayer speed;
+    private final TraceLayer temp;
+    private final TraceLayer[] layers;
+    private final double[] min;
+    private final double[] max;
+    /// View, in history rows
+    private double span;
+    private double end; // right edge while not following
+    private boolean following = true;
+    private double dragX;
+    private double dragEnd;
+    /// Window of the last drawn frame; while following, its columns on the grid of perColumn rows
+    private double drawnFrom = Double.NaN;
+    private double drawnTo = Double.NaN;
+    private long drawnRows = -1;
+    private boolean drawnFollowing;
+    private double drawnPerColumn = Double.NaN;
+    private long drawnEnd; // grid column after the last drawn one
+    private String caption;
+
+    WaveformPanel(double width, double height, WaveformHistory history, double sampleRate) {
+        this.width = width;
+        this.height = height;
+        this.history = history;
+        this.sampleRate = sampleRate;
+        this.span = DEFAULT_SPAN * sampleRate;
+        setPrefSize(width, height);
+        setMinSize(width, height);
+        setMaxSize(width, height);
+        setClip(new Rectangle(width, height));
+        Canvas grid = new Canvas(width, height);
+        drawGrid(grid.getGraphicsContext2D());
+        double band = height / 4;
+        voltage = new TraceLayer(Channels.VOLTAGE, Color.RED, "Voltage (V)", width, height, band, 0, 20);
+        current = new TraceLayer(Channels.CURRENT, Color.LIGHTGREEN, "Current (A)", width, height, 2 * band, 0, band + 20);
+        speed = new TraceLayer(Channels.SPEED, Color.LIGHTSKYBLUE, "Speed (km/h)", width, height, 3 * band, 0, 2 * band + 20);
+        temp = new TraceLayer(Channels.TEMP, Color.YELLOW, "Temp (°C)", width, height, height, 10, 3 * band + 20);
+        layers = new TraceLayer[]{voltage, current, speed, temp};
+        labels = new Canvas(width, height);
+        min = new double[(int) width];
+        max = new double[(int) width];
+        getChildren().addAll(grid, voltage.canvas, current.canvas, speed.canvas, temp.canvas, labels);
+        setOnScroll(e -> {
+            if (e.getDeltaY() != 0) zoom(e.getDeltaY() > 0 ? 1 / ZOOM_STEP : ZOOM_STEP, e.getX());
+        });
+        setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragEnd = viewEnd();
+        });
+        setOnMouseDragged(e -> pan(dragEnd - (e.getX() - dragX) / width * span));
+        setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) {
+                following = true;
+                update();
+            }
+        });
+        caption = caption();
+        drawLabels();
+    }
+
+    void setChannelsVisible(boolean showVoltage, boolean showCurrent, boolean showSpeed, boolean showTemp) {
+        boolean changed = voltage.setShown(showVoltage) | current.setShown(showCurrent)
+                | speed.setShown(showSpeed) | temp.setShown(showTemp);
+        if (changed) drawLabels();
+    }
+
+    /// Redraws the traces if the window moved or rows arrived inside it; while following, appends the
+    /// columns completed since the last frame when the layers can take them
+    void update() {
+        long rows = history.rows();
+        int columns = columns();
+        double perColumn = span / columns;
+        double to = viewEnd();
+        double from = to - span;
+        boolean moved = from != drawnFrom || to != drawnTo;
+        if (!moved && (rows == drawnRows || drawnRows >= to)) return;
+        long endColumn = following ? Math.round(to / perColumn) : -1;
+        boolean append = following && drawnFollowing && perColumn == drawnPerColumn
+                && endColumn > drawnEnd && endColumn - drawnEnd < columns && rows >= drawnRows;
+        for (TraceLayer layer : layers) {
+            if (!append || !layer.append(drawnEnd, endColumn, perColumn, columns)) {
+                layer.draw(from, to, columns, endColumn - columns);
+            }
+        }
+        drawnFrom = from;
+        drawnTo = to;
+        drawnRows = rows;
+        drawnFollowing = following;
+        drawnPerColumn = perColumn;
+        drawnEnd = endColumn;
+        String text = caption();
+        if (!text.equals(caption)) {
+            caption = text;
+            drawLabels();
+        }
+    }
+
+    /// Redraws every visible trace, e.g. after the history was reset
+    void redrawAll() {
+        drawnRows = -1;
+        drawnFrom = Double.NaN;
+        drawnFollowing = false;
+        if (following) {
+            update();
+        } else {
+            pan(end); // back within the history, which may have shrunk
+        }
+    }
+
+    private int columns() {
+        return (int) Math.max(2, Math.min(width, Math.ceil(span)));
+    }
+
+    /// Right edge of the window: while following, the end of the last whole column on the grid of
+    /// span / columns() rows, so the window moves a column at a time
+    private double viewEnd() {
+        if (!following) return end;
+        double perColumn = span / columns();
+        return Math.floor(history.rows() / perColumn + WaveformHistory.ROW_TOLERANCE) * perColumn;
+    }
+
+    /// Scales the span by factor around the row under x, keeping the right edge on the newest sample
+    /// while following
+    private void zoom(double factor, double x) {
+        double maxSpan = Math.max(history.rows(), DEFAULT_SPAN * sampleRate);
+        double next = Math.max(MIN_SPAN * sampleRate, Math.min(maxSpan, span * factor));
+        if (next == span) return;
+        double anchor = viewEnd() - span + x / width * span;
+        span = next;
+        if (following) {
+            update();
+        } else {
+            pan(anchor + (1 - x / width) * span);
+        }
+    }
+
+    /// Moves the right edge to row target, no earlier than a full window from the start; reaching the
+    /// newest row follows again
+    private void pan(double target) {
+        long rows = history.rows();
+        end = Math.max(Math.min(target, rows), Math.min(span, rows));
+        following = end >= rows;
+        update();
+    }
+
+    private void drawGrid(GraphicsContext gc) {
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, width, height);
+        gc.setStroke(Color.WHITE);
+        gc.setLineWidth(0.5);
+        double squareSize = Math.min(width, height) / 10;
+        for (int i = 0; i <= 25; i++) {
+            double pos = i * squareSize;
+            gc.strokeLine(0, pos, width, pos);
+            gc.strokeLine(pos, 0, pos, height);
+        }
+    }
+
+    /// The window's length and, while not following, how far back its right edge is
+    private String caption() {
+        return following
+                ? "Last " + duration(span / sampleRate)
+                : duration(span / sampleRate) + ", " + duration((history.rows() - end) / sampleRate) + " back";
+    }
+
+    /// Channel names at the left, the caption at the top right
+    private void drawLabels() {
+        GraphicsContext gc = labels.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        gc.setTextAlign(TextAlignment.LEFT);
+        for (TraceLayer layer : layers) {
+            if (!layer.shown) continue;
+            gc.setFill(layer.color);
+            gc.fillText(layer.label, 10, layer.labelY);
+        }
+        gc.setFill(Color.WHITE);
+        gc.setTextAlign(TextAlignment.RIGHT);
+        gc.fillText(caption, width - 10, 20);
+    }
+
+    private static String duration(double seconds) {
+        if (seconds < 120) return String.format(Locale.ROOT, seconds < 10 ? "%.1f s" : "%.0f s", seconds);
+        if (seconds < 7200) return String.format(Locale.ROOT, "%.1f min", seconds / 60);
+        return String.format(Locale.ROOT, "%.1f h", seconds / 3600);
+    }
+
+    private final class TraceLayer {
+        /// Scale grows with headroom and shrinks only below half, so rescales stay rare
+        private static final double HEADROOM = 1.1;
+        private static final double GROWTH = 1.25;
+        final Canvas canvas;
+        final Color color;
+        final String label;
+        final double labelY;
+        private final int channel;
+        private final GraphicsContext gc;
+        private final double baseline;
+        private final double bandHeight;
+        private final double offset;
+        /// Largest and smallest value of each column in the window, newest last, so the window's
+        /// extremes after appending columns are O(1) however many it holds; empty columns count as
+        /// -infinity and +infinity
+        private RingBuffer highs;
+        private RingBuffer lows;
+        private boolean shown = true;
+        private double scale = Double.NaN;
+        /// Whether the window dips below offset, which then sits mid-band with room either side
+        private boolean signed;
+        /// Grid column at canvas x = 0, and the pen after the last drawn column
+        private long base;
+        private boolean pen;
+        private double lastY;
+
+        TraceLayer(int channel, Color color, String label, double width, double height,
+                   double baseline, double offset, double labelY) {
+            this.channel = channel;
+            this.color = color;
+            this.label = label;
+            this.baseline = baseline;
+            this.bandHeight = height / 4;
+            this.offset = offset;
+            this.labelY = labelY;
+            canvas = new Canvas(2 * width, height);
+            gc = canvas.getGraphicsContext2D();
+            gc.setStroke(color);
+            gc.setLineWidth(1.5);
+        }
+
+        boolean setShown(boolean show) {
+            if (show == shown) return false;
+            shown = show;
+            canvas.setVisible(show);
+            if (show) redrawAll(); // hidden layers are not kept current
+            return true;
+        }
+
+        /// Strokes the rows [from, to) as columns min/max pairs, each column a vertical run joined to
+        /// the next; columns without rows leave a gap. first is the window's first grid column while
+        /// following, so later frames can append to it.
+        void draw(double from, double to, int columns, long first) {
+            if (!shown) return;
+            history.read(channel, from, to, columns, min, max);
+            if (highs == null || highs.capacity() != columns) {
+                highs = new RingBuffer(columns);
+                lows = new RingBuffer(columns);
+            }
+            highs.clear();
+            lows.clear();
+            push(columns);
+            scale();
+            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            canvas.setTranslateX(0);
+            base = first;
+            pen = false;
+            stroke(0, columns, width / columns);
+        }
+
+        /// Strokes the grid columns [from, to) after the last drawn one and scrolls them into view;
+        /// false, leaving the layer to be redrawn, when it is hidden, the canvas is full or the
+        /// window's new maximum needs another scale
+        boolean append(long from, long to, double perColumn, int columns) {
+            if (!shown || to - base > 2L * columns) return false;
+            int n = (int) (to - from);
+            history.read(channel, from * perColumn, to * perColumn, n, min, max);
+            push(n);
+            if (scale()) return false;
+            int offset = (int) (from - base);
+            double dx = width / columns;
+            stroke(offset, n, dx);
+            canvas.setTranslateX(-(to - base - columns) * dx);
+            return true;
+        }
+
+        /// Slides the window over the columns min and max[0, n) just read
+        private void push(int n) {
+            for (int c = 0; c < n; c++) {
+                boolean empty = Double.isNaN(max[c]);
+                highs.add(empty ? Double.NEGATIVE_INFINITY : max[c]);
+                lows.add(empty ? Double.POSITIVE_INFINITY : min[c]);
+            }
+        }
+
+        /// Adjusts the scale to the window's largest distance from offset, either side; true if it or
+        /// the band's layout changed
+        private boolean scale() {
+            double top = highs.max();
+            double bottom = lows.min();
+            boolean below = bottom < offset;
+            double reach = top == Double.NEGATIVE_INFINITY ? 0 : Math.max(top - offset, offset - bottom);
+            double target = Math.max(reach * HEADROOM, 1e-9);
+            if (below == signed && target <= scale && target >= scale / 2) return false;
+            signed = below;
+            scale = target > scale ? target * GROWTH : target;
+            return true;
+        }
+
+        /// Strokes min and max[0, n) as the canvas columns from offset on, continuing the pen
+        private void stroke(int offset, int n, double dx) {
+            gc.beginPath();
+            if (pen) gc.moveTo((offset - 0.5) * dx, lastY);
+            for (int c = 0; c < n; c++) {
+                if (Double.isNaN(min[c])) {
+                    pen = false;
+                    continue;
+                }
+                double x = (offset + c + 0.5) * dx;
+                lastY = y(min[c]);
+                if (pen) {
+                    gc.lineTo(x, lastY);
+                } else {
+                    gc.moveTo(x, lastY);
+                    pen = true;
+                }
+                if (max[c] != min[c]) {
+                    lastY = y(max[c]);
+                    gc.lineTo(x, lastY);
+                }
+            }
+            gc.stroke();
+        }
+
+        /// offset sits at the bottom of the band, or its middle while the window goes below it
+        private double y(double value) {
+            if (signed) return baseline - bandHeight * 0.5 - (value - offset) / scale * bandHeight * 0.4;
+            return baseline - ((value - offset) / scale * bandHeight * 0.8);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package powertrain.ev.simulation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/// Runs the model to a checkpoint, then forks what-if branches from it and runs them in parallel. Every
+/// branch starts from the same engine, driver and integrator state and shares the history sampled
+/// before the checkpoint, so the branches differ only in the parameters they override.
+/// Usage: WhatIf <params.properties> <checkpoint> <duration> --branch key=value[,key=value...] ...
+///               [--cycle NEDC|file.csv] [--dt seconds] [--integrator euler|rk4|dopri5] [--tolerance tol]
+///               [--sample seconds] [--threads N] [--out results.csv] [--export dir]
+/// checkpoint and duration are in seconds unless suffixed with s, m or h; the branches run for duration
+/// past the checkpoint. Each --branch is one run, e.g. --branch driveMode=Eco --branch regenBraking=false.
+/// --export writes every branch's full history, prefix included, as CSV.
+public final class WhatIf {
+    static final double DEFAULT_SAMPLE_INTERVAL = 1; // s
+
+    private WhatIf() {}
+
+    /// A finished branch
+    static final class Outcome {
+        final String label;
+        final RunSummary summary;
+        final Trace history;
+        final double branchDistance; // km since the checkpoint
+        final double branchEnergy; // kWh since the checkpoint
+
+        Outcome(String label, RunSummary summary, Trace history, Checkpoint from) {
+            this.label = label;
+            this.summary = summary;
+            this.history = history;
+            this.branchDistance = summary.distance - from.distance;
+            this.branchEnergy = summary.energyConsumed - from.energyConsumed;
+        }
+    }
+
+    /// key=value pairs separated by commas, in the order given
+    static Map<String, String> parseOverrides(String spec) {
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected key=value in branch " + spec + ": " + pair);
+            String key = pair.substring(0, eq).trim();
+            String value = pair.substring(eq + 1).trim();
+            new SimulationParameters().set(key, value); // reject unknown keys and bad values before any run
+            overrides.put(key, value);
+        }
+        return overrides;
+    }
+
+    /// Runs every branch on a pool of the given size; outcomes are in branch order and do not depend on
+    /// the number of threads
+    static List<Outcome> run(Checkpoint checkpoint, Map<String, Map<String, String>> branches, double duration,
+                             double sampleInterval, int threads) {
+        List<Checkpoint.Branch> forks = new ArrayList<>();
+        branches.forEach((label, overrides) -> forks.add(checkpoint.branch(label, overrides)));
+        List<Callable<RunSummary>> tasks = new ArrayList<>();
+        for (Checkpoint.Branch branch : forks) tasks.add(() -> branch.run(duration, sampleInterval));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<RunSummary>> results = pool.invokeAll(tasks);
+            List<Outcome> outcomes = new ArrayList<>();
+            for (int i = 0; i < forks.size(); i++) {
+                Checkpoint.Branch branch = forks.get(i);
+                outcomes.add(new Outcome(branch.label, results.get(i).get(), branch.history, checkpoint));
+            }
+            return outcomes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running branches", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static String header() {
+        return "branch,soc_pct,distance_km,energy_kwh,wh_per_km,branch_km,branch_kwh,peak_temp_c,steps\n";
+    }
+
+    static String row(Outcome outcome) {
+        RunSummary s = outcome.summary;
+        return String.format(Locale.ROOT, "\"%s\",%.4f,%.4f,%.5f,%.3f,%.4f,%.5f,%.3f,%d%n",
+                outcome.label, s.soc, s.distance, s.energyConsumed, s.energyEfficiency,
+                outcome.branchDistance, outcome.branchEnergy, s.peakBatteryTemp, s.steps);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: WhatIf <params.properties> <checkpoint[s|m|h]> <duration[s|m|h]>"
+                    + " --branch key=value[,key=value...] ... [--cycle NEDC|file.csv] [--dt seconds]"
+                    + " [--integrator euler|rk4|dopri5] [--tolerance tol] [--sample seconds] [--threads N]"
+                    + " [--out results.csv] [--export dir]");
+            System.exit(2);
+        }
+        Map<String, Map<String, String>> branches = new LinkedHashMap<>();
+        DriveCycle cycle = null;
+        double dt = BatchRunner.DEFAULT_DT;
+        String integratorName = "euler";
+        double tolerance = BatchRunner.DEFAULT_TOLERANCE;
+        double sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = null;
+        Path export = null;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--branch" -> {
+                    String spec = args[++i];
+                    branches.put(spec, parseOverrides(spec));
+                }
+                case "--cycle" -> cycle = DriveCycle.resolve(args[++i]);
+                case "--dt" -> dt = Double.parseDouble(args[++i]);
+                case "--integrator" -> integratorName = args[++i];
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                case "--sample" -> sampleInterval = Double.parseDouble(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--out" -> out = Path.of(args[++i]);
+                case "--export" -> export = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (branches.isEmpty()) throw new IllegalArgumentException("No --branch given");
+        Properties props = SimulationParameters.readProperties(Path.of(args[0]));
+        SimulationParameters params = new SimulationParameters();
+        params.apply(props);
+        DriverInput driver = cycle != null
+                ? new DriveCycleDriver(cycle)
+                : BatchRunner.constant(SimulationParameters.number(props, "acceleration", 0));
+        double checkpointTime = BatchRunner.parseDuration(args[1]);
+        double duration = BatchRunner.parseDuration(args[2]);
+        Integrator integrator = Integrator.create(integratorName, dt, tolerance);
+
+        SimulationEngine engine = new SimulationEngine(params);
+        Trace history = new Trace();
+        BatchRunner.runUntil(engine, driver, checkpointTime, integrator,
+                new Trace.Sampler(history, sampleInterval, sampleInterval));
+        Checkpoint checkpoint = Checkpoint.capture(engine, driver, integrator, history);
+        System.out.printf(Locale.ROOT, "Checkpoint: %.1f s, SoC %.2f %%, %.3f km, %d history rows%n",
+                checkpoint.time, checkpoint.soc, checkpoint.distance, checkpoint.history.rows());
+        long start = System.nanoTime();
+        List<Outcome> outcomes = run(checkpoint, branches, duration, sampleInterval, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StringBuilder report = new StringBuilder(header());
+        for (Outcome outcome : outcomes) report.append(row(outcome));
+        System.out.print(report);
+        System.out.printf(Locale.ROOT, "Branches: %d on %d threads in %.3f s%n", outcomes.size(), threads, seconds);
+        if (out != null) Files.writeString(out, report, StandardCharsets.UTF_8);
+        if (export != null) {
+            Files.createDirectories(export);
+            for (int i = 0; i < outcomes.size(); i++) {
+                Outcome outcome = outcomes.get(i);
+                Path target = export.resolve("branch_" + (i + 1) + TelemetryExporter.Format.CSV.extension);
+                SimulationParameters branchParams = params.copy();
+                branches.get(outcome.label).forEach(branchParams::set);
+                TelemetryExporter.export(outcome.history, TelemetryExporter.parameterLine(branchParams),
+                        TelemetryExporter.Format.CSV, target, rows -> {}, () -> false);
+                System.out.println(outcome.label + ": " + target);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import org.junit.jupiter.api.Test;
+
+class CellPackTest {
+    private static final double DT = 0.01; // s
+    private static final double AMBIENT = 25; // °C
+
+    @Test
+    void vectorKernelIsInUse() {
+        // Surefire adds jdk.incubator.vector, so the equality tests below compare two different kernels
+        assertInstanceOf(VectorCellKernel.class, CellPack.KERNEL);
+    }
+
+    @Test
+    void kernelsAgreeBitForBitOnAFullPack() {
+        assertKernelsAgree(pack(400, 7)); // 756 cells
+    }
+
+    @Test
+    void kernelsAgreeBitForBitOnAPackWithAVectorTail() {
+        assertKernelsAgree(pack(40.7, 3)); // 33 cells, not a multiple of any vector width
+    }
+
+    private static CellPack pack(double voltage, int parallel) {
+        SimulationParameters p = new SimulationParameters();
+        p.set("batteryVoltage", Double.toString(voltage));
+        p.set("cellsParallel", Integer.toString(parallel));
+        p.set("cellSpread", "5");
+        return new CellPack(p, 80, 20);
+    }
+
+    /// Steps the pack through discharge and charge, and at intervals runs each kernel pass on two copies
+    /// of its state, one per kernel
+    private static void assertKernelsAgree(CellPack pack) {
+        CellPack.Kernel scalar = new CellPack.ScalarKernel();
+        CellPack.Kernel vector = new VectorCellKernel();
+        double decay1 = Math.exp(-DT / BatteryModel.TAU1);
+        double decay2 = Math.exp(-DT / BatteryModel.TAU2);
+        for (int step = 0; step < 3000; step++) {
+            double current = step < 2000 ? 150 * Math.sin(step * 0.01) + 60 : -80;
+            pack.advance(current, DT, AMBIENT);
+            if (step % 250 != 0) continue;
+            CellPack a = pack.copy();
+            CellPack b = pack.copy();
+
+            scalar.conductances(a);
+            vector.conductances(b);
+            assertArrayEquals(a.r, b.r, "r at step " + step);
+            assertArrayEquals(a.g, b.g, "g at step " + step);
+            assertArrayEquals(a.e, b.e, "e at step " + step);
+            assertArrayEquals(a.ge, b.ge, "ge at step " + step);
+
+            System.arraycopy(pack.v, 0, a.v, 0, pack.size);
+            System.arraycopy(pack.v, 0, b.v, 0, pack.size);
+            scalar.advance(a, DT, decay1, decay2);
+            vector.advance(b, DT, decay1, decay2);
+            assertArrayEquals(a.soc, b.soc, "soc at step " + step);
+            assertArrayEquals(a.rc1, b.rc1, "rc1 at step " + step);
+            assertArrayEquals(a.rc2, b.rc2, "rc2 at step " + step);
+            assertArrayEquals(a.nextTemp, b.nextTemp, "temperatures at step " + step);
+
+            scalar.extremes(a);
+            vector.extremes(b);
+            assertEquals(a.socMin, b.socMin);
+            assertEquals(a.socMax, b.socMax);
+            assertEquals(a.tempMin, b.tempMin);
+            assertEquals(a.tempMax, b.tempMax);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class IntegratorTest {
+    private static final double TOLERANCE = 1e-6;
+
+    @Test
+    void schemesAgreeOverNedc() throws IOException {
+        DriveCycle nedc = DriveCycle.resolve("NEDC");
+        RunSummary euler = run(nedc, "euler", 0.01);
+        for (String scheme : new String[]{"rk4", "dopri5"}) {
+            RunSummary other = run(nedc, scheme, scheme.equals("rk4") ? 0.05 : 0.5);
+            assertClose(euler.distance, other.distance, 1e-3, scheme + " distance");
+            assertClose(euler.energyConsumed, other.energyConsumed, 1e-3, scheme + " energy");
+            assertClose(100 - euler.soc, 100 - other.soc, 1e-3, scheme + " charge used");
+            assertEquals(euler.peakBatteryTemp, other.peakBatteryTemp, 0.01, scheme + " peak temperature");
+            assertEquals(nedc.duration(), other.simulatedTime, 1e-9, scheme + " end time");
+        }
+    }
+
+    @Test
+    void adaptiveSchemeNeedsFarFewerEvaluations() throws IOException {
+        DriveCycle nedc = DriveCycle.resolve("NEDC");
+        RunSummary euler = run(nedc, "euler", 0.01);
+        RunSummary dopri5 = run(nedc, "dopri5", 0.5);
+        assertTrue(dopri5.evaluations * 5 < euler.evaluations,
+                dopri5.evaluations + " evaluations against " + euler.evaluations);
+    }
+
+    @Test
+    void constantAccelerationAgrees() {
+        SimulationParameters params = new SimulationParameters();
+        DriverInput driver = BatchRunner.constant(0.5);
+        RunSummary euler = BatchRunner.run(params, driver, 120, Integrator.create("euler", 0.001, TOLERANCE), null);
+        for (String scheme : new String[]{"rk4", "dopri5"}) {
+            RunSummary other = BatchRunner.run(params, driver, 120, Integrator.create(scheme, 0.1, TOLERANCE), null);
+            assertClose(euler.distance, other.distance, 1e-3, scheme + " distance");
+            assertClose(euler.energyConsumed, other.energyConsumed, 1e-3, scheme + " energy");
+        }
+    }
+
+    private static RunSummary run(DriveCycle cycle, String scheme, double dt) {
+        return BatchRunner.run(new SimulationParameters(), new DriveCycleDriver(cycle), cycle.duration(),
+                Integrator.create(scheme, dt, TOLERANCE), null);
+    }
+
+    private static void assertClose(double expected, double actual, double relative, String what) {
+        assertEquals(expected, actual, Math.abs(expected) * relative, what);
+    }
+}
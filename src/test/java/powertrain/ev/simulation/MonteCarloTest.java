@@ -0,0 +1,85 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+class MonteCarloTest {
+    @Test
+    void resultsDoNotDependOnThreadCount() throws IOException {
+        MonteCarlo single = MonteCarlo.parse(spec(1));
+        single.run(1);
+        for (int threads : new int[]{2, 3, 8}) {
+            MonteCarlo pooled = MonteCarlo.parse(spec(1));
+            pooled.run(threads);
+            for (int trip = 0; trip < single.trips; trip++) {
+                assertArrayEquals(single.draws[trip], pooled.draws[trip], "draws of trip " + trip);
+            }
+            assertArrayEquals(single.range, pooled.range, threads + " threads");
+            assertArrayEquals(single.whPerKm, pooled.whPerKm, threads + " threads");
+            assertArrayEquals(single.peakTemp, pooled.peakTemp, threads + " threads");
+            assertEquals(single.report(10), pooled.report(10));
+        }
+    }
+
+    @Test
+    void seedChangesTheDraws() throws IOException {
+        MonteCarlo first = MonteCarlo.parse(spec(1));
+        MonteCarlo second = MonteCarlo.parse(spec(2));
+        first.run(1);
+        second.run(1);
+        assertFalse(Arrays.equals(first.range, second.range));
+    }
+
+    @Test
+    void drawsStayWithinTheirDistributions() throws IOException {
+        MonteCarlo monteCarlo = MonteCarlo.parse(spec(1));
+        monteCarlo.run(2);
+        assertEquals(Arrays.asList("ambientTemp", "vehicleMass", "regenEfficiency"),
+                Arrays.asList(monteCarlo.drawnKeys));
+        for (double[] draw : monteCarlo.draws) {
+            assertTrue(draw[1] >= 1200 && draw[1] <= 1900, "vehicleMass " + draw[1]);
+            assertTrue(draw[2] >= 0.4 && draw[2] <= 0.6, "regenEfficiency " + draw[2]);
+        }
+    }
+
+    @Test
+    void positiveKeysRejectDistributionsReachingZero() {
+        for (String value : new String[]{"normal(1500,100)", "uniform(0,2000)", "triangular(-10,1500,1900)",
+                "normal(1500,100,0,1900)"}) {
+            Properties spec = new Properties();
+            spec.setProperty("vehicleMass", value);
+            assertThrows(IllegalArgumentException.class,
+                    () -> MonteCarlo.parseParameters(spec, new ArrayList<>(), new ArrayList<>()), value);
+        }
+        Properties spec = new Properties();
+        spec.setProperty("vehicleMass", "normal(1500,100,1200,1900)");
+        spec.setProperty("batteryCapacity", "uniform(50,70)");
+        spec.setProperty("ambientTemp", "normal(20,8)"); // may go below zero
+        ArrayList<String> keys = new ArrayList<>();
+        MonteCarlo.parseParameters(spec, keys, new ArrayList<>());
+        assertEquals(Arrays.asList("batteryCapacity", "ambientTemp", "vehicleMass"), keys);
+    }
+
+    /// Enough trips that the generator splits several levels deep
+    private static Properties spec(long seed) {
+        Properties spec = new Properties();
+        spec.setProperty("trips", "100");
+        spec.setProperty("seed", Long.toString(seed));
+        spec.setProperty("duration", "2m");
+        spec.setProperty("integrator", "dopri5");
+        spec.setProperty("tolerance", "1e-4");
+        spec.setProperty("vehicleMass", "normal(1500,100,1200,1900)");
+        spec.setProperty("ambientTemp", "normal(20,8)");
+        spec.setProperty("regenEfficiency", "uniform(0.4,0.6)");
+        return spec;
+    }
+}
@@ -0,0 +1,77 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultCacheTest {
+    private static final double DURATION = 60; // s
+    private static final double DT = 0.1; // s
+    private final DriverInput driver = BatchRunner.constant(1.0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void repeatedRunIsAnsweredFromMemory() throws IOException {
+        ResultCache cache = ResultCache.open(directory);
+        RunSummary first = cache.run(new SimulationParameters(), driver, DURATION, DT);
+        RunSummary second = cache.run(new SimulationParameters(), driver, DURATION, DT);
+        assertFalse(first.cached);
+        assertTrue(second.cached);
+        assertSameResult(first, second);
+        assertTrue(cache.stats().startsWith("Cache: 1 memory hits, 0 disk hits, 1 misses"), cache.stats());
+    }
+
+    @Test
+    void reopenedCacheIsAnsweredFromDisk() throws IOException {
+        RunSummary first = ResultCache.open(directory).run(new SimulationParameters(), driver, DURATION, DT);
+        ResultCache reopened = ResultCache.open(directory);
+        RunSummary second = reopened.run(new SimulationParameters(), driver, DURATION, DT);
+        assertTrue(second.cached);
+        assertSameResult(first, second);
+        assertTrue(reopened.stats().startsWith("Cache: 0 memory hits, 1 disk hits, 0 misses"), reopened.stats());
+    }
+
+    @Test
+    void changedInputMisses() throws IOException {
+        ResultCache cache = ResultCache.open(directory);
+        cache.run(new SimulationParameters(), driver, DURATION, DT);
+        SimulationParameters heavier = new SimulationParameters();
+        heavier.set("vehicleMass", "1600");
+        assertFalse(cache.run(heavier, driver, DURATION, DT).cached);
+        assertFalse(cache.run(new SimulationParameters(), driver, DURATION / 2, DT).cached);
+        assertFalse(cache.run(new SimulationParameters(), BatchRunner.constant(0.5), DURATION, DT).cached);
+        assertFalse(cache.run(new SimulationParameters(), driver, DURATION, DT / 2).cached);
+    }
+
+    @Test
+    void resultOfAnotherModelRevisionIsNotReturned() throws IOException {
+        SimulationParameters params = new SimulationParameters();
+        String scheme = new EulerIntegrator(DT).describe();
+        String current = ResultCache.key(params, driver.profileKey(), DURATION, scheme);
+        String previous = ResultCache.key(ResultCache.MODEL_REVISION - 1, params, driver.profileKey(), DURATION, scheme);
+        assertNotEquals(current, previous);
+
+        ResultCache cache = ResultCache.open(directory);
+        RunSummary stale = new RunSummary(1, 2, 3, 4, 5, DURATION, 6, 0, 6, 7, false);
+        cache.put(previous, stale);
+        RunSummary fresh = ResultCache.open(directory).run(params, driver, DURATION, DT);
+        assertFalse(fresh.cached);
+        assertNotEquals(stale.distance, fresh.distance);
+    }
+
+    private static void assertSameResult(RunSummary expected, RunSummary actual) {
+        assertEquals(expected.soc, actual.soc);
+        assertEquals(expected.distance, actual.distance);
+        assertEquals(expected.energyConsumed, actual.energyConsumed);
+        assertEquals(expected.peakBatteryTemp, actual.peakBatteryTemp);
+        assertEquals(expected.steps, actual.steps);
+    }
+}
@@ -0,0 +1,106 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class SampleQueueTest {
+    private static final int WIDTH = 3;
+
+    @Test
+    void capacityRoundsUpToAPowerOfTwo() {
+        assertEquals(1, new SampleQueue(1, WIDTH).capacity());
+        assertEquals(8, new SampleQueue(5, WIDTH).capacity());
+        assertEquals(64, new SampleQueue(64, WIDTH).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new SampleQueue(0, WIDTH));
+    }
+
+    @Test
+    void pollsInOfferOrder() {
+        SampleQueue queue = new SampleQueue(4, WIDTH);
+        double[] out = new double[WIDTH];
+        for (int round = 0; round < 5; round++) { // wraps the slots several times
+            for (int i = 0; i < 3; i++) assertTrue(queue.offer(sample(round * 3 + i)));
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.poll(out));
+                assertArrayEquals(sample(round * 3 + i), out);
+            }
+            assertFalse(queue.poll(out));
+        }
+    }
+
+    @Test
+    void fullQueueRejectsAndCountsDrops() {
+        SampleQueue queue = new SampleQueue(4, WIDTH);
+        for (int i = 0; i < 4; i++) assertTrue(queue.offer(sample(i)));
+        assertFalse(queue.offer(sample(4)));
+        assertFalse(queue.offer(sample(5)));
+        assertEquals(2, queue.dropped());
+        double[] out = new double[WIDTH];
+        assertTrue(queue.poll(out));
+        assertArrayEquals(sample(0), out); // the rejected samples never overwrote the oldest
+        assertTrue(queue.offer(sample(6)));
+        for (int expected : new int[]{1, 2, 3, 6}) {
+            assertTrue(queue.poll(out));
+            assertArrayEquals(sample(expected), out);
+        }
+        assertEquals(2, queue.dropped());
+    }
+
+    @Test
+    void clearDiscardsPublishedSamples() {
+        SampleQueue queue = new SampleQueue(4, WIDTH);
+        queue.offer(sample(0));
+        queue.offer(sample(1));
+        queue.clear();
+        double[] out = new double[WIDTH];
+        assertFalse(queue.poll(out));
+        for (int i = 0; i < 4; i++) assertTrue(queue.offer(sample(2 + i)));
+        assertTrue(queue.poll(out));
+        assertArrayEquals(sample(2), out);
+    }
+
+    @Test
+    void consumerThreadSeesEverySampleInOrder() throws InterruptedException {
+        int count = 200_000;
+        SampleQueue queue = new SampleQueue(64, WIDTH);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            double[] out = new double[WIDTH];
+            for (int next = 0; next < count; ) {
+                if (!queue.poll(out)) {
+                    Thread.yield();
+                    continue;
+                }
+                for (int k = 0; k < WIDTH; k++) {
+                    if (out[k] != next * 10.0 + k) {
+                        failure.compareAndSet(null, "sample " + next + " read as " + out[0] + ", " + out[1] + ", "
+                                + out[2]);
+                        return;
+                    }
+                }
+                next++;
+            }
+        }, "test-consumer");
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            while (!queue.offer(sample(i))) Thread.yield();
+        }
+        consumer.join(60_000);
+        assertFalse(consumer.isAlive(), "consumer did not finish");
+        assertNull(failure.get());
+    }
+
+    /// Every element distinct, so a torn or misplaced copy shows
+    private static double[] sample(int i) {
+        double[] sample = new double[WIDTH];
+        for (int k = 0; k < WIDTH; k++) sample[k] = i * 10.0 + k;
+        return sample;
+    }
+}
@@ -0,0 +1,133 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionReplayTest {
+    @TempDir
+    Path directory;
+
+    /// Drives the engine the way the simulation thread does, with jittery frames and every kind of
+    /// input event, logging it as it goes
+    private static final class LiveSession {
+        final SimulationEngine engine = new SimulationEngine(new SimulationParameters());
+        final FixedStepLoop loop = new FixedStepLoop(engine, 60);
+        final SessionRecorder session;
+        final SplittableRandom frames = new SplittableRandom(7);
+        long steps;
+
+        LiveSession(Path path) throws IOException {
+            session = SessionRecorder.create(path, engine, loop);
+            loop.addObserver(session);
+        }
+
+        void run(double seconds) {
+            for (double t = 0; t < seconds; ) {
+                double frame = 1 / 60.0 * (0.5 + frames.nextDouble());
+                steps += loop.advance(frame);
+                t += frame;
+            }
+        }
+
+        void input(String key, String value) {
+            SessionFile.apply(engine, key, value);
+            session.set(key, value);
+        }
+
+        void drive(DriveCycle cycle) {
+            loop.setDriver(cycle == null ? null : new DriveCycleDriver(cycle));
+            session.cycle(cycle);
+        }
+
+        void reset() {
+            engine.reset();
+            loop.reset();
+            session.reset();
+        }
+
+        void restore(double[] snapshot) {
+            engine.restore(snapshot);
+            loop.reset();
+            session.restore(engine);
+        }
+
+        double[] snapshot() {
+            double[] snapshot = new double[SimulationEngine.SNAPSHOT_SIZE];
+            engine.snapshot(snapshot);
+            return snapshot;
+        }
+    }
+
+    @Test
+    void replayReproducesTheLiveSessionBitForBit() throws IOException {
+        Path path = directory.resolve("session.evs");
+        LiveSession live = new LiveSession(path);
+        live.input(SessionFile.ACCELERATION, "1.5");
+        live.run(20);
+        live.input("vehicleMass", "1750");
+        live.input("regenBraking", "false");
+        live.input(SessionFile.ACCELERATION, "-0.8");
+        live.run(10);
+        double[] checkpoint = live.snapshot();
+        live.drive(DriveCycle.resolve("NEDC"));
+        live.loop.setRate(120); // a new dt starts a new run of steps
+        live.run(60);
+        live.input("driveMode", "Sport");
+        live.run(30);
+        live.restore(checkpoint);
+        live.run(15);
+        live.reset();
+        live.drive(null);
+        live.input(SessionFile.ACCELERATION, "2");
+        live.run(25);
+        live.session.finish(live.engine);
+        live.session.close();
+
+        SessionReplay.Result result = SessionReplay.replay(path);
+        assertEquals(live.steps, result.steps);
+        assertEquals(ResultCache.MODEL_REVISION, result.modelRevision);
+        assertEquals(List.of(), result.mismatches());
+        double[] replayed = new double[SimulationEngine.SNAPSHOT_SIZE];
+        result.engine.snapshot(replayed);
+        assertArrayEquals(live.snapshot(), replayed);
+    }
+
+    @Test
+    void stateChangedOutsideTheLogIsReported() throws IOException {
+        Path path = directory.resolve("session.evs");
+        LiveSession live = new LiveSession(path);
+        live.input(SessionFile.ACCELERATION, "1");
+        live.run(10);
+        live.engine.soc = Math.nextDown(live.engine.soc); // one ulp the log knows nothing about
+        live.session.finish(live.engine);
+        live.session.close();
+
+        SessionReplay.Result result = SessionReplay.replay(path);
+        assertFalse(result.mismatches().isEmpty());
+    }
+
+    @Test
+    void logWithoutEndReplaysWithNothingToCompare() throws IOException {
+        Path path = directory.resolve("session.evs");
+        LiveSession live = new LiveSession(path);
+        live.input(SessionFile.ACCELERATION, "1");
+        live.run(5);
+        live.session.set("vehicleMass", "1600"); // flushes the steps, as any later event would
+        live.session.close();
+
+        SessionReplay.Result result = SessionReplay.replay(path);
+        assertNull(result.expected);
+        assertTrue(result.mismatches().isEmpty());
+        assertEquals(live.steps, result.steps);
+    }
+}
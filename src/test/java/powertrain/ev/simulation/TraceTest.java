@@ -0,0 +1,125 @@
+package powertrain.ev.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TraceTest {
+    /// Past the first chunk and off its boundary, so reads cross chunks and owners
+    private static final int PREFIX = Trace.CHUNK_ROWS + 123;
+
+    @Test
+    void forkKeepsThePrefixWhileTheParentGoesOn() {
+        Trace parent = trace(0, PREFIX);
+        Trace fork = parent.fork();
+        append(parent, 1_000_000, 2 * Trace.CHUNK_ROWS);
+        assertEquals(PREFIX, fork.rows());
+        assertEquals(PREFIX + 2 * Trace.CHUNK_ROWS, parent.rows());
+        assertRows(fork, 0, 0, PREFIX);
+        assertRows(parent, PREFIX, 1_000_000, 2 * Trace.CHUNK_ROWS);
+    }
+
+    @Test
+    void forkAppendsAreInvisibleToParentAndSiblings() {
+        Trace parent = trace(0, PREFIX);
+        Trace first = parent.fork();
+        Trace second = parent.fork();
+        append(first, 1_000_000, 500);
+        append(second, 2_000_000, Trace.CHUNK_ROWS + 1);
+        append(parent, 3_000_000, 10);
+        assertEquals(PREFIX + 10, parent.rows());
+        assertRows(parent, PREFIX, 3_000_000, 10);
+        assertRows(first, 0, 0, PREFIX);
+        assertRows(first, PREFIX, 1_000_000, 500);
+        assertRows(second, 0, 0, PREFIX);
+        assertRows(second, PREFIX, 2_000_000, Trace.CHUNK_ROWS + 1);
+    }
+
+    @Test
+    void forksOfForksReadThroughEveryAncestor() {
+        Trace root = trace(0, PREFIX);
+        Trace child = root.fork();
+        append(child, PREFIX, 700);
+        Trace grandchild = child.fork();
+        Trace idle = grandchild.fork(); // an empty fork shares its parent's prefix
+        append(grandchild, 5_000_000, 3);
+        append(idle, PREFIX + 700, 50);
+        append(root, 9_000_000, 5);
+        assertRows(idle, 0, 0, PREFIX + 750);
+        double[] column = new double[PREFIX + 700];
+        grandchild.read(Channels.SPEED, 0, column, 0, column.length);
+        for (int row = 0; row < column.length; row++) assertEquals(value(row, Channels.SPEED), column[row]);
+        assertRows(grandchild, PREFIX + 700, 5_000_000, 3);
+    }
+
+    @Test
+    void branchesFromOneCheckpointDoNotShareState() {
+        SimulationEngine engine = new SimulationEngine(new SimulationParameters());
+        engine.acceleration = 1;
+        Trace history = new Trace();
+        BatchRunner.runUntil(engine, null, 30, new EulerIntegrator(0.01), new Trace.Sampler(history, 1, 1));
+        Checkpoint checkpoint = Checkpoint.capture(engine, null, new EulerIntegrator(0.01), history);
+        long prefix = checkpoint.history.rows();
+
+        Checkpoint.Branch eco = checkpoint.branch("eco", Map.of("driveMode", "Eco"));
+        Checkpoint.Branch heavy = checkpoint.branch("heavy", Map.of("vehicleMass", "2500"));
+        eco.run(60, 1);
+        heavy.run(30, 1);
+        BatchRunner.runUntil(engine, null, 40, new EulerIntegrator(0.01), new Trace.Sampler(history, 1, 31));
+
+        assertEquals(prefix, checkpoint.history.rows());
+        assertAppended(60, eco.history.rows() - prefix); // one sample per simulated second
+        assertAppended(30, heavy.history.rows() - prefix);
+        assertAppended(10, history.rows() - prefix);
+        for (Trace trace : new Trace[]{eco.history, heavy.history, history}) {
+            for (long row = 0; row < prefix; row++) {
+                assertEquals(checkpoint.history.get(Channels.SPEED, row), trace.get(Channels.SPEED, row));
+            }
+        }
+        assertNotEquals(eco.history.get(Channels.SPEED, prefix + 20), heavy.history.get(Channels.SPEED, prefix + 20));
+        assertEquals(checkpoint.time, eco.engine.time - 60, 1e-9);
+        assertEquals("Normal", engine.params.driveMode);
+        assertEquals(new SimulationParameters().vehicleMass, engine.params.vehicleMass);
+    }
+
+    /// Summed steps may land just short of the last sample time
+    private static void assertAppended(long seconds, long rows) {
+        assertTrue(rows == seconds || rows == seconds - 1, rows + " rows for " + seconds + " s");
+    }
+
+    private static Trace trace(long first, int rows) {
+        Trace trace = new Trace();
+        append(trace, first, rows);
+        return trace;
+    }
+
+    private static void append(Trace trace, long first, int rows) {
+        double[] sample = new double[Channels.COUNT];
+        for (int i = 0; i < rows; i++) {
+            for (int c = 0; c < Channels.COUNT; c++) sample[c] = value(first + i, c);
+            trace.append(sample);
+        }
+    }
+
+    private static double value(long id, int column) {
+        return id * 100.0 + column;
+    }
+
+    /// Rows [from, from + count) of every column hold the samples appended with ids first on
+    private static void assertRows(Trace trace, long from, long first, int count) {
+        double[] expected = new double[count];
+        double[] actual = new double[count];
+        for (int c = 0; c < Channels.COUNT; c++) {
+            for (int i = 0; i < count; i++) {
+                expected[i] = value(first + i, c);
+                assertEquals(expected[i], trace.get(c, from + i));
+            }
+            trace.read(c, from, actual, 0, count);
+            assertArrayEquals(expected, actual);
+        }
+    }
+}